@@ -0,0 +1,197 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.kerbaya.locajapa.QueryBuilder.ValueQueryBuilder;
+
+/*
+ * Chooses between the SUBQUERY and IN_MEMORY value queries of a LoaderFactory
+ * from the time each one takes per loaded ID.  The first WARMUP_BATCHES 
+ * batches of each strategy are not timed, since they include query parsing 
+ * and class loading.  Both are sampled until each has MIN_BATCHES timed 
+ * batches, then the cheaper one is used, except for every PROBE_INTERVAL-th 
+ * batch, which re-samples the other one.  Counters are halved when they reach
+ * MAX_BATCHES, so that the choice follows changes in data and database load
+ */
+final class AdaptiveResolution<V>
+{
+	private static final int WARMUP_BATCHES = 2;
+	private static final int MIN_BATCHES = 4;
+	private static final int PROBE_INTERVAL = 32;
+	private static final int MAX_BATCHES = 256;
+	
+	private static final class Counters
+	{
+		private final ValueResolution valueResolution;
+		private int warmupCount;
+		private long batchCount;
+		private long idCount;
+		private long rowCount;
+		private long elapsedNanos;
+		
+		public Counters(ValueResolution valueResolution)
+		{
+			this.valueResolution = valueResolution;
+		}
+		
+		public void add(int ids, int rows, long nanos)
+		{
+			if (warmupCount < WARMUP_BATCHES)
+			{
+				warmupCount++;
+				return;
+			}
+			if (batchCount == MAX_BATCHES)
+			{
+				batchCount /= 2;
+				idCount /= 2;
+				rowCount /= 2;
+				elapsedNanos /= 2;
+			}
+			batchCount++;
+			idCount += ids;
+			rowCount += rows;
+			elapsedNanos += nanos;
+		}
+		
+		public boolean isSampled()
+		{
+			return batchCount >= MIN_BATCHES;
+		}
+		
+		/*
+		 * Compares nanos-per-ID without dividing
+		 */
+		public boolean isCheaperThan(Counters other)
+		{
+			return (double) elapsedNanos * other.idCount 
+					< (double) other.elapsedNanos * idCount;
+		}
+		
+		public ValueResolutionStats createStats()
+		{
+			return new ValueResolutionStats(
+					valueResolution, 
+					batchCount, 
+					idCount, 
+					rowCount, 
+					elapsedNanos);
+		}
+	}
+	
+	private final ValueQueryBuilder<V> subqueryBuilder;
+	private final ValueQueryBuilder<V> inMemoryBuilder;
+	private final Counters subquery = 
+			new Counters(ValueResolution.SUBQUERY);
+	private final Counters inMemory = 
+			new Counters(ValueResolution.IN_MEMORY);
+	private long decisionCount;
+	
+	public AdaptiveResolution(
+			ValueQueryBuilder<V> subqueryBuilder, 
+			ValueQueryBuilder<V> inMemoryBuilder)
+	{
+		this.subqueryBuilder = subqueryBuilder;
+		this.inMemoryBuilder = inMemoryBuilder;
+	}
+	
+	private Counters getCounters(ValueResolution valueResolution)
+	{
+		return valueResolution == ValueResolution.IN_MEMORY ? 
+				inMemory : subquery;
+	}
+	
+	/*
+	 * Must hold the lock
+	 */
+	private Counters getPreferred()
+	{
+		if (!subquery.isSampled())
+		{
+			return null;
+		}
+		if (!inMemory.isSampled())
+		{
+			return null;
+		}
+		return inMemory.isCheaperThan(subquery) ? inMemory : subquery;
+	}
+	
+	public synchronized ValueQueryBuilder<V> getValueQueryBuilder()
+	{
+		decisionCount++;
+		final Counters next;
+		if (!subquery.isSampled())
+		{
+			next = subquery;
+		}
+		else if (!inMemory.isSampled())
+		{
+			next = inMemory;
+		}
+		else
+		{
+			Counters preferred = getPreferred();
+			if (decisionCount % PROBE_INTERVAL == 0)
+			{
+				next = preferred == subquery ? inMemory : subquery;
+			}
+			else
+			{
+				next = preferred;
+			}
+		}
+		return next == inMemory ? inMemoryBuilder : subqueryBuilder;
+	}
+	
+	public synchronized void record(
+			ValueResolution valueResolution, 
+			int idCount, 
+			int rowCount, 
+			long elapsedNanos)
+	{
+		getCounters(valueResolution).add(idCount, rowCount, elapsedNanos);
+	}
+	
+	/*
+	 * While sampling, the strategy being sampled; after, the cheaper one
+	 */
+	public synchronized ValueResolution getValueResolution()
+	{
+		Counters preferred = getPreferred();
+		if (preferred == null)
+		{
+			preferred = subquery.isSampled() ? inMemory : subquery;
+		}
+		return preferred.valueResolution;
+	}
+	
+	public synchronized boolean isSampling()
+	{
+		return getPreferred() == null;
+	}
+	
+	public synchronized List<ValueResolutionStats> getStats()
+	{
+		return Arrays.asList(subquery.createStats(), inMemory.createStats());
+	}
+}
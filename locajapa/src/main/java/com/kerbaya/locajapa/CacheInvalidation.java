@@ -0,0 +1,187 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * <p>Describes entries to be removed from a {@link LocalizedCache}: all 
+ * entries of an entity, or the entries of some of its IDs.  Publish instances
+ * through an {@link InvalidationBus} to invalidate every subscribed cache, or 
+ * pass them to {@link LocalizedCache#invalidate(CacheInvalidation)}.</p>
+ * 
+ * <p>The entity name is the one specified with 
+ * {@link LoaderFactory.Builder#setEntityName(String)}, or the JPA entity name
+ * for {@link LocalizableLoader}.</p>
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public final class CacheInvalidation implements Serializable
+{
+	private static final long serialVersionUID = 2871530442795648803L;
+	
+	private final String entityName;
+	private final Set<Object> ids;
+	private final String languageTag;
+	
+	private CacheInvalidation(
+			String entityName, Set<Object> ids, String languageTag)
+	{
+		if (entityName == null)
+		{
+			throw new NullPointerException("entityName");
+		}
+		this.entityName = entityName;
+		this.ids = ids;
+		this.languageTag = languageTag;
+	}
+	
+	/**
+	 * Invalidates all entries of an entity
+	 * 
+	 * @param entityName
+	 * the name of the localizable entity
+	 * 
+	 * @return
+	 * the invalidation
+	 */
+	public static CacheInvalidation forEntity(String entityName)
+	{
+		return new CacheInvalidation(entityName, null, null);
+	}
+	
+	/**
+	 * Invalidates all entries of one localizable entity instance
+	 * 
+	 * @param entityName
+	 * the name of the localizable entity
+	 * 
+	 * @param id
+	 * the ID of the localizable entity instance
+	 * 
+	 * @return
+	 * the invalidation
+	 */
+	public static CacheInvalidation forId(String entityName, Object id)
+	{
+		return new CacheInvalidation(
+				entityName, Collections.singleton(id), null);
+	}
+	
+	/**
+	 * Invalidates all entries of some localizable entity instances
+	 * 
+	 * @param entityName
+	 * the name of the localizable entity
+	 * 
+	 * @param ids
+	 * the IDs of the localizable entity instances
+	 * 
+	 * @return
+	 * the invalidation
+	 */
+	public static CacheInvalidation forIds(
+			String entityName, Collection<?> ids)
+	{
+		return new CacheInvalidation(entityName, 
+				Collections.unmodifiableSet(new HashSet<Object>(ids)), null);
+	}
+	
+	/**
+	 * Invalidates the entries affected by a change to a localized entity 
+	 * instance: the map of its localizable entity instance, and the values of
+	 * every locale that resolves to the language tag of the localized entity 
+	 * instance, or to one of its more specific tags
+	 * 
+	 * @param entityName
+	 * the name of the localizable entity
+	 * 
+	 * @param localizableId
+	 * the ID of the localizable entity instance that owns {@code localized}
+	 * 
+	 * @param localized
+	 * the localized entity instance that was inserted, updated or deleted
+	 * 
+	 * @return
+	 * the invalidation
+	 */
+	public static CacheInvalidation forLocalized(
+			String entityName, Object localizableId, Localized<?> localized)
+	{
+		return new CacheInvalidation(
+				entityName, 
+				Collections.singleton(localizableId), 
+				localized.getLanguageTag());
+	}
+	
+	/**
+	 * @return
+	 * the name of the localizable entity
+	 */
+	public String getEntityName()
+	{
+		return entityName;
+	}
+	
+	/**
+	 * @return
+	 * the invalidated IDs, or {@code null} if all IDs are invalidated
+	 */
+	public Set<Object> getIds()
+	{
+		return ids;
+	}
+	
+	/**
+	 * @return
+	 * the changed language tag, or {@code null} if the values of all locales 
+	 * are invalidated
+	 */
+	public String getLanguageTag()
+	{
+		return languageTag;
+	}
+	
+	/*
+	 * locale is null for maps
+	 */
+	boolean matches(String entityName, Object id, Locale locale)
+	{
+		return this.entityName.equals(entityName)
+				&& (ids == null || ids.contains(id))
+				&& (languageTag == null 
+						|| locale == null 
+						|| Utils.getCandidateLanguageTags(locale).contains(
+								languageTag));
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "CacheInvalidation[entityName=" + entityName 
+				+ ", ids=" + (ids == null ? "*" : ids) 
+				+ ", languageTag=" + (languageTag == null ? "*" : languageTag)
+				+ "]";
+	}
+}
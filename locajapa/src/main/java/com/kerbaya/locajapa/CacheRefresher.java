@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import com.kerbaya.locajapa.QueryBuilder.RefreshQueryBuilder;
+
+/*
+ * Patches the cache entries (if any) and the catalog snapshot (if preloaded)
+ * of one LoaderFactory with the localized rows changed since the last 
+ * refresh.  The first refresh only reads the watermark, unless one was seeded
+ * by a preload; if there are no rows yet, the next refresh that finds some 
+ * invalidates the entity and discards the snapshot instead, since both may 
+ * predate them
+ */
+final class CacheRefresher<V>
+{
+	private final RefreshQueryBuilder<V> rqb;
+	private final LoaderCache cache;
+	private final AtomicReference<CatalogSnapshot<V>> snapshot;
+	private boolean empty;
+	private Object watermark;
+	
+	public CacheRefresher(
+			RefreshQueryBuilder<V> rqb, 
+			LoaderCache cache, 
+			AtomicReference<CatalogSnapshot<V>> snapshot)
+	{
+		this.rqb = rqb;
+		this.cache = cache;
+		this.snapshot = snapshot;
+	}
+	
+	public Object readWatermark(EntityManager em)
+	{
+		return em.createQuery(rqb.getWatermarkQueryText()).getSingleResult();
+	}
+	
+	/*
+	 * Called with the watermark of a new snapshot.  The refresher moves back 
+	 * to the lower of its own watermark and the snapshot's, so that neither 
+	 * the cache nor the snapshot misses a row; rows that one of them already 
+	 * has are patched again with the same values.  A snapshot read without 
+	 * rows has no watermark, and is discarded by the next refresh that finds 
+	 * some
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void seed(Object watermark)
+	{
+		if (watermark == null)
+		{
+			this.watermark = null;
+			empty = true;
+		}
+		else if (this.watermark == null 
+				|| ((Comparable<Object>) watermark).compareTo(
+						this.watermark) < 0)
+		{
+			this.watermark = watermark;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	public synchronized int refresh(EntityManager em)
+	{
+		if (watermark == null)
+		{
+			watermark = readWatermark(em);
+			if (watermark == null)
+			{
+				empty = true;
+			}
+			else if (empty)
+			{
+				if (cache != null)
+				{
+					cache.invalidateAll();
+				}
+				snapshot.set(null);
+			}
+			return 0;
+		}
+		
+		Query q = em.createQuery(rqb.getQueryText());
+		RefreshQueryBuilder.setWatermarkParam(q, watermark);
+		List<Object[]> rows = q.getResultList();
+		Map<Object, Map<Locale, V>> changes = new LinkedHashMap<>();
+		for (Object[] row: rows)
+		{
+			/*
+			 * Rows are ordered by version
+			 */
+			watermark = RefreshQueryBuilder.getVersion(row);
+			
+			String languageTag = rqb.getLanguageTag(row);
+			if (languageTag == null)
+			{
+				continue;
+			}
+			Object id = RefreshQueryBuilder.getLocalizableId(row);
+			V value = rqb.getValue(row);
+			Map<Locale, V> changed = changes.get(id);
+			if (changed == null)
+			{
+				changed = new HashMap<>();
+				changes.put(id, changed);
+			}
+			changed.put(LocaleRegistry.getLocale(languageTag), value);
+		}
+		
+		if (cache != null)
+		{
+			for (Map.Entry<Object, Map<Locale, V>> e: changes.entrySet())
+			{
+				cache.patch(e.getKey(), e.getValue());
+			}
+		}
+		
+		CatalogSnapshot<V> current = snapshot.get();
+		if (current != null && !changes.isEmpty())
+		{
+			/*
+			 * A concurrent preload replaces the snapshot with a newer one
+			 */
+			snapshot.compareAndSet(current, current.patch(changes, watermark));
+		}
+		return rows.size();
+	}
+}
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.NotSerializableException;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * Writes catalog snapshots to files, and reopens them as memory-mapped 
+ * snapshots that decode the maps of an ID when they are requested.  Layout:
+ * 
+ * int magic, int format version
+ * bytes fingerprint (the UTF-8 catalog query text)
+ * boolean hasWatermark, [bytes serialized watermark]
+ * records, per ID: tagged ID, int row count, 
+ *         (int tag index, boolean hasValue, [value])...
+ * int tag count, bytes UTF-8 language tag...
+ * index, per ID: (int ID hash code, int record position), by hash code
+ * int tag count position, int ID count
+ * 
+ * "bytes" is an int length followed by the bytes.  Records are streamed to
+ * the file as they are encoded, and the index is searched in the mapped 
+ * file, so neither is held on the heap.  Positions are ints, since a mapped
+ * file cannot exceed 2 GB.  IDs are found by their hash code, which must be
+ * the same in the JVM that opens the file: true of Long, Integer and 
+ * String, and of ID classes whose hash code is computed from their fields.
+ * A file is written to a temporary file in the same directory, then moved 
+ * over the target, so that it is never opened partially written
+ */
+final class CatalogFile
+{
+	private static final int MAGIC = 0x4C434A43;
+	private static final int FORMAT_VERSION = 2;
+	
+	private static final byte ID_LONG = 'L';
+	private static final byte ID_INTEGER = 'I';
+	private static final byte ID_STRING = 'S';
+	private static final byte ID_SERIALIZED = 'O';
+	
+	private static final int INDEX_ENTRY_SIZE = 8;
+	private static final int TRAILER_SIZE = 8;
+	
+	private CatalogFile() {}
+	
+	private static final class ByteBufferInputStream extends InputStream
+	{
+		private final ByteBuffer buffer;
+		
+		public ByteBufferInputStream(ByteBuffer buffer)
+		{
+			this.buffer = buffer;
+		}
+		
+		@Override
+		public int read()
+		{
+			return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+		}
+		
+		@Override
+		public int read(byte[] b, int off, int len)
+		{
+			if (len == 0)
+			{
+				return 0;
+			}
+			if (!buffer.hasRemaining())
+			{
+				return -1;
+			}
+			len = Math.min(len, buffer.remaining());
+			buffer.get(b, off, len);
+			return len;
+		}
+	}
+	
+	private static final class Mapped<V> extends CatalogSnapshot<V>
+	{
+		private final ByteBuffer buffer;
+		private final int indexStart;
+		private final int idCount;
+		private final Locale[] locales;
+		private final CatalogValueCodec<? extends V> codec;
+		
+		public Mapped(
+				ByteBuffer buffer, 
+				int indexStart, 
+				int idCount, 
+				Locale[] locales,
+				CatalogValueCodec<? extends V> codec,
+				Object watermark)
+		{
+			super(watermark);
+			this.buffer = buffer;
+			this.indexStart = indexStart;
+			this.idCount = idCount;
+			this.locales = locales;
+			this.codec = codec;
+		}
+		
+		private int getHash(int entry)
+		{
+			return buffer.getInt(indexStart + entry * INDEX_ENTRY_SIZE);
+		}
+		
+		private DataInput getRecord(int entry)
+		{
+			ByteBuffer b = buffer.duplicate();
+			b.position(buffer.getInt(
+					indexStart + entry * INDEX_ENTRY_SIZE + 4));
+			return new DataInputStream(new ByteBufferInputStream(b));
+		}
+		
+		/*
+		 * Returns the record of an ID, positioned after the ID, or null
+		 */
+		private DataInput find(Object id) throws IOException
+		{
+			int hash = getIdHash(id);
+			int low = 0;
+			int high = idCount;
+			while (low < high)
+			{
+				int mid = (low + high) >>> 1;
+				if (getHash(mid) < hash)
+				{
+					low = mid + 1;
+				}
+				else
+				{
+					high = mid;
+				}
+			}
+			for (int i = low; i < idCount && getHash(i) == hash; i++)
+			{
+				DataInput in = getRecord(i);
+				if (id.equals(readId(in)))
+				{
+					return in;
+				}
+			}
+			return null;
+		}
+		
+		@Override
+		public Set<Object> getIds()
+		{
+			return new AbstractSet<Object>() {
+				@Override
+				public Iterator<Object> iterator()
+				{
+					return new Iterator<Object>() {
+						private int next;
+						
+						@Override
+						public boolean hasNext()
+						{
+							return next < idCount;
+						}
+						
+						@Override
+						public Object next()
+						{
+							if (next == idCount)
+							{
+								throw new NoSuchElementException();
+							}
+							try
+							{
+								return readId(getRecord(next++));
+							}
+							catch (IOException e)
+							{
+								throw new IllegalStateException(e);
+							}
+						}
+						
+						@Override
+						public void remove()
+						{
+							throw new UnsupportedOperationException();
+						}
+					};
+				}
+				
+				@Override
+				public int size()
+				{
+					return idCount;
+				}
+				
+				@Override
+				public boolean contains(Object o)
+				{
+					return o != null && Mapped.this.contains(o);
+				}
+			};
+		}
+		
+		@Override
+		public int size()
+		{
+			return idCount;
+		}
+		
+		@Override
+		public boolean contains(Object id)
+		{
+			try
+			{
+				return find(id) != null;
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+		
+		@Override
+		public Map<Locale, V> getMap(Object id)
+		{
+			try
+			{
+				DataInput in = find(id);
+				if (in == null)
+				{
+					return Collections.emptyMap();
+				}
+				LocaleArrayMap.Builder<V> map = new LocaleArrayMap.Builder<>();
+				for (int i = in.readInt(); i > 0; i--)
+				{
+					Locale locale = locales[in.readInt()];
+					map.put(locale, in.readBoolean() ? codec.read(in) : null);
+				}
+				return map.build();
+			}
+			catch (IOException e)
+			{
+				throw new IllegalStateException(e);
+			}
+		}
+	}
+	
+	private static void writeString(String s, DataOutput out) 
+			throws IOException
+	{
+		CatalogValueCodecs.writeBytes(s.getBytes(StandardCharsets.UTF_8), out);
+	}
+	
+	private static String readString(DataInput in) throws IOException
+	{
+		return new String(
+				CatalogValueCodecs.readBytes(in), StandardCharsets.UTF_8);
+	}
+	
+	private static void writeSerialized(Object o, DataOutput out) 
+			throws IOException
+	{
+		if (!(o instanceof Serializable))
+		{
+			throw new NotSerializableException(o.getClass().getName());
+		}
+		CatalogValueCodecs.<Serializable>serializable().write(
+				(Serializable) o, out);
+	}
+	
+	private static void writeId(Object id, DataOutput out) throws IOException
+	{
+		if (id instanceof Long)
+		{
+			out.writeByte(ID_LONG);
+			out.writeLong((Long) id);
+		}
+		else if (id instanceof Integer)
+		{
+			out.writeByte(ID_INTEGER);
+			out.writeInt((Integer) id);
+		}
+		else if (id instanceof String)
+		{
+			out.writeByte(ID_STRING);
+			writeString((String) id, out);
+		}
+		else
+		{
+			out.writeByte(ID_SERIALIZED);
+			writeSerialized(id, out);
+		}
+	}
+	
+	private static Object readId(DataInput in) throws IOException
+	{
+		byte type = in.readByte();
+		switch (type)
+		{
+		case ID_LONG:
+			return in.readLong();
+		case ID_INTEGER:
+			return in.readInt();
+		case ID_STRING:
+			return readString(in);
+		case ID_SERIALIZED:
+			return CatalogValueCodecs.serializable().read(in);
+		default:
+			throw new IOException("unknown ID type: " + type);
+		}
+	}
+	
+	private static int getIdHash(Object id)
+	{
+		return id.hashCode();
+	}
+	
+	/*
+	 * The position of the next byte, which DataOutputStream.size() reports 
+	 * as Integer.MAX_VALUE once past it
+	 */
+	private static int getPosition(DataOutputStream out) throws IOException
+	{
+		int position = out.size();
+		if (position == Integer.MAX_VALUE)
+		{
+			throw new IOException(
+					"catalog file exceeds 2 GB, the size limit of a "
+							+ "memory-mapped file");
+		}
+		return position;
+	}
+	
+	public static <V> void write(
+			CatalogSnapshot<V> snapshot, 
+			Path file, 
+			String fingerprint, 
+			CatalogValueCodec<? super V> codec) 
+			throws IOException
+	{
+		Path tmp = Files.createTempFile(
+				file.toAbsolutePath().getParent(), 
+				file.getFileName().toString(), 
+				".tmp");
+		boolean moved = false;
+		try
+		{
+			try (DataOutputStream out = new DataOutputStream(
+					new BufferedOutputStream(Files.newOutputStream(tmp))))
+			{
+				out.writeInt(MAGIC);
+				out.writeInt(FORMAT_VERSION);
+				writeString(fingerprint, out);
+				out.writeBoolean(snapshot.getWatermark() != null);
+				if (snapshot.getWatermark() != null)
+				{
+					writeSerialized(snapshot.getWatermark(), out);
+				}
+				
+				/*
+				 * Index entries are sorted as longs: the hash code in the 
+				 * high bits, the record position in the low bits
+				 */
+				Set<Object> ids = snapshot.getIds();
+				long[] index = new long[ids.size()];
+				int idCount = 0;
+				Map<Locale, Integer> tagIndex = new LinkedHashMap<>();
+				for (Object id: ids)
+				{
+					index[idCount++] = (long) getIdHash(id) << 32 
+							| getPosition(out);
+					writeId(id, out);
+					Map<Locale, V> map = snapshot.getMap(id);
+					out.writeInt(map.size());
+					for (Entry<Locale, V> e: map.entrySet())
+					{
+						Integer tag = tagIndex.get(e.getKey());
+						if (tag == null)
+						{
+							tag = tagIndex.size();
+							tagIndex.put(e.getKey(), tag);
+						}
+						out.writeInt(tag);
+						out.writeBoolean(e.getValue() != null);
+						if (e.getValue() != null)
+						{
+							codec.write(e.getValue(), out);
+						}
+					}
+				}
+				
+				int tagsPosition = getPosition(out);
+				out.writeInt(tagIndex.size());
+				for (Locale locale: tagIndex.keySet())
+				{
+					writeString(locale.toLanguageTag(), out);
+				}
+				Arrays.sort(index, 0, idCount);
+				for (int i = 0; i < idCount; i++)
+				{
+					out.writeLong(index[i]);
+				}
+				out.writeInt(tagsPosition);
+				out.writeInt(idCount);
+				getPosition(out);
+			}
+			Files.move(
+					tmp, 
+					file, 
+					StandardCopyOption.ATOMIC_MOVE, 
+					StandardCopyOption.REPLACE_EXISTING);
+			moved = true;
+		}
+		finally
+		{
+			if (!moved)
+			{
+				Files.deleteIfExists(tmp);
+			}
+		}
+	}
+	
+	/*
+	 * Throws IllegalArgumentException if the file was written for another
+	 * fingerprint
+	 */
+	public static <V> CatalogSnapshot<V> open(
+			Path file, String fingerprint, CatalogValueCodec<? extends V> codec)
+			throws IOException
+	{
+		ByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(
+				file, StandardOpenOption.READ))
+		{
+			if (channel.size() >= Integer.MAX_VALUE)
+			{
+				throw new IOException(
+						"catalog file exceeds 2 GB, the size limit of a "
+								+ "memory-mapped file: " + file);
+			}
+			buffer = channel.map(MapMode.READ_ONLY, 0, channel.size());
+		}
+		DataInput in = new DataInputStream(new ByteBufferInputStream(buffer));
+		if (buffer.limit() < TRAILER_SIZE + 8 || in.readInt() != MAGIC)
+		{
+			throw new IOException("not a catalog file: " + file);
+		}
+		int formatVersion = in.readInt();
+		if (formatVersion != FORMAT_VERSION)
+		{
+			throw new IOException(
+					"unsupported catalog file version: " + formatVersion);
+		}
+		if (!fingerprint.equals(readString(in)))
+		{
+			throw new IllegalArgumentException(
+					"catalog file of another query: " + file);
+		}
+		Object watermark = in.readBoolean() ? 
+				CatalogValueCodecs.serializable().read(in) : null;
+		
+		int trailer = buffer.limit() - TRAILER_SIZE;
+		int idCount = buffer.getInt(trailer + 4);
+		buffer.position(buffer.getInt(trailer));
+		Locale[] locales = new Locale[in.readInt()];
+		for (int i = 0; i < locales.length; i++)
+		{
+			locales[i] = LocaleRegistry.getLocale(readString(in));
+		}
+		int indexStart = trailer - idCount * INDEX_ENTRY_SIZE;
+		if (buffer.position() != indexStart)
+		{
+			throw new IOException("corrupt catalog file: " + file);
+		}
+		return new Mapped<>(
+				buffer, indexStart, idCount, locales, codec, watermark);
+	}
+}
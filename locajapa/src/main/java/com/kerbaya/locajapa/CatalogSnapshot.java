@@ -0,0 +1,276 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * An immutable copy of every localized row of an entity, and the version 
+ * watermark it was read at (null without a version property).  Patching 
+ * returns a new snapshot that overlays the changed maps on this one, until
+ * the overlay grows large enough to be folded into a new InMemory snapshot
+ */
+abstract class CatalogSnapshot<V>
+{
+	/*
+	 * Overlays are folded once they hold this many IDs, or a quarter of the
+	 * IDs of their base if that is more: each refresh copies the overlay, 
+	 * while folding copies every ID
+	 */
+	private static final int MIN_COMPACTION_SIZE = 64;
+	
+	private final Object watermark;
+	
+	protected CatalogSnapshot(Object watermark)
+	{
+		this.watermark = watermark;
+	}
+	
+	public final Object getWatermark()
+	{
+		return watermark;
+	}
+	
+	/*
+	 * The IDs that have localized rows
+	 */
+	public abstract Set<Object> getIds();
+	
+	/*
+	 * IDs without localized rows have an empty map
+	 */
+	public abstract Map<Locale, V> getMap(Object id);
+	
+	/*
+	 * False for IDs without localized rows when the snapshot was read, such
+	 * as entities persisted afterwards
+	 */
+	public abstract boolean contains(Object id);
+	
+	public V getValue(Object id, Locale locale)
+	{
+		return Utils.resolve(
+				getMap(id), LocaleRegistry.getCandidates(locale));
+	}
+	
+	public int size()
+	{
+		return getIds().size();
+	}
+	
+	/*
+	 * The locales whose values are resolved in advance
+	 */
+	protected Set<Locale> getResolvedLocales()
+	{
+		return Collections.emptySet();
+	}
+	
+	/*
+	 * changes holds the changed values of each changed ID
+	 */
+	public CatalogSnapshot<V> patch(
+			Map<Object, Map<Locale, V>> changes, Object watermark)
+	{
+		Patched<V> patched = new Patched<>(this, changes, watermark);
+		if (patched.overlay.size() < Math.max(
+				MIN_COMPACTION_SIZE, patched.base.size() / 4))
+		{
+			return patched;
+		}
+		return patched.compact();
+	}
+	
+	/*
+	 * Values of the preloaded locales are resolved in advance
+	 */
+	static final class InMemory<V> extends CatalogSnapshot<V>
+	{
+		private final Map<Object, Integer> index;
+		private final Map<Locale, V>[] maps;
+		private final Map<Locale, Object[]> resolved;
+		
+		/*
+		 * rows holds the locale-value map of each ID
+		 */
+		@SuppressWarnings("unchecked")
+		public InMemory(
+				Map<Object, Map<Locale, V>> rows, 
+				Set<Locale> locales, 
+				Object watermark)
+		{
+			super(watermark);
+			index = new HashMap<>(rows.size() * 4 / 3 + 1);
+			maps = (Map<Locale, V>[]) new Map<?, ?>[rows.size()];
+			int i = 0;
+			for (Map.Entry<Object, Map<Locale, V>> e: rows.entrySet())
+			{
+				index.put(e.getKey(), i);
+				maps[i++] = LocaleArrayMap.copyOf(e.getValue());
+			}
+			resolved = new HashMap<>();
+			for (Locale locale: locales)
+			{
+				LocaleRegistry.Candidates candidates = 
+						LocaleRegistry.getCandidates(locale);
+				Object[] values = new Object[maps.length];
+				for (int j = 0; j < maps.length; j++)
+				{
+					values[j] = Utils.resolve(maps[j], candidates);
+				}
+				resolved.put(locale, values);
+			}
+		}
+		
+		@Override
+		public Set<Object> getIds()
+		{
+			return Collections.unmodifiableSet(index.keySet());
+		}
+		
+		@Override
+		public int size()
+		{
+			return maps.length;
+		}
+		
+		@Override
+		public boolean contains(Object id)
+		{
+			return index.containsKey(id);
+		}
+		
+		@Override
+		protected Set<Locale> getResolvedLocales()
+		{
+			return Collections.unmodifiableSet(resolved.keySet());
+		}
+		
+		@Override
+		public Map<Locale, V> getMap(Object id)
+		{
+			Integer i = index.get(id);
+			return i == null ? Collections.<Locale, V>emptyMap() : maps[i];
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public V getValue(Object id, Locale locale)
+		{
+			Integer i = index.get(id);
+			if (i == null)
+			{
+				return null;
+			}
+			Object[] values = resolved.get(locale);
+			if (values != null)
+			{
+				return (V) values[i];
+			}
+			return Utils.resolve(maps[i], LocaleRegistry.getCandidates(locale));
+		}
+	}
+	
+	private static final class Patched<V> extends CatalogSnapshot<V>
+	{
+		private final CatalogSnapshot<V> base;
+		private final Map<Object, Map<Locale, V>> overlay;
+		
+		public Patched(
+				CatalogSnapshot<V> source, 
+				Map<Object, Map<Locale, V>> changes, 
+				Object watermark)
+		{
+			super(watermark);
+			Map<Object, Map<Locale, V>> overlay;
+			if (source instanceof Patched)
+			{
+				base = ((Patched<V>) source).base;
+				overlay = new HashMap<>(((Patched<V>) source).overlay);
+			}
+			else
+			{
+				base = source;
+				overlay = new HashMap<>();
+			}
+			for (Map.Entry<Object, Map<Locale, V>> e: changes.entrySet())
+			{
+				Map<Locale, V> map = new HashMap<>(source.getMap(e.getKey()));
+				map.putAll(e.getValue());
+				overlay.put(e.getKey(), LocaleArrayMap.copyOf(map));
+			}
+			this.overlay = overlay;
+		}
+		
+		public InMemory<V> compact()
+		{
+			Map<Object, Map<Locale, V>> rows = new HashMap<>();
+			for (Object id: base.getIds())
+			{
+				rows.put(id, base.getMap(id));
+			}
+			rows.putAll(overlay);
+			return new InMemory<>(
+					rows, base.getResolvedLocales(), getWatermark());
+		}
+		
+		@Override
+		public Set<Object> getIds()
+		{
+			if (overlay.isEmpty())
+			{
+				return base.getIds();
+			}
+			Set<Object> ids = new HashSet<>(base.getIds());
+			ids.addAll(overlay.keySet());
+			return Collections.unmodifiableSet(ids);
+		}
+		
+		@Override
+		public boolean contains(Object id)
+		{
+			return overlay.containsKey(id) || base.contains(id);
+		}
+		
+		@Override
+		protected Set<Locale> getResolvedLocales()
+		{
+			return base.getResolvedLocales();
+		}
+		
+		@Override
+		public Map<Locale, V> getMap(Object id)
+		{
+			Map<Locale, V> map = overlay.get(id);
+			return map == null ? base.getMap(id) : map;
+		}
+		
+		@Override
+		public V getValue(Object id, Locale locale)
+		{
+			return overlay.containsKey(id) ? 
+					super.getValue(id, locale) : base.getValue(id, locale);
+		}
+	}
+}
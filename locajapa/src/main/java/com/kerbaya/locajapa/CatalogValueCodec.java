@@ -0,0 +1,65 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Encodes the localized values of a catalog snapshot file, written with 
+ * {@link LoaderFactory#savePreload} and reopened with 
+ * {@link LoaderFactory#openPreload}.  {@link CatalogValueCodecs} provides
+ * implementations for common value types.
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ *
+ * @param <V>
+ * the localized value type
+ */
+public interface CatalogValueCodec<V>
+{
+	/**
+	 * Writes a value
+	 * 
+	 * @param value
+	 * the value to write, never {@code null}
+	 * 
+	 * @param out
+	 * the output to write to
+	 * 
+	 * @throws IOException
+	 * the value could not be written
+	 */
+	void write(V value, DataOutput out) throws IOException;
+	
+	/**
+	 * Reads a value written by {@link #write(Object, DataOutput)}
+	 * 
+	 * @param in
+	 * the input to read from
+	 * 
+	 * @return
+	 * the value read
+	 * 
+	 * @throws IOException
+	 * the value could not be read
+	 */
+	V read(DataInput in) throws IOException;
+}
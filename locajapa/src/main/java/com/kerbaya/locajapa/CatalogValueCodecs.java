@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Provides {@link CatalogValueCodec} implementations
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public final class CatalogValueCodecs
+{
+	private CatalogValueCodecs() {}
+	
+	static void writeBytes(byte[] bytes, DataOutput out) throws IOException
+	{
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+	
+	static byte[] readBytes(DataInput in) throws IOException
+	{
+		byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		return bytes;
+	}
+	
+	/**
+	 * Encodes strings of any length as UTF-8
+	 */
+	public static final CatalogValueCodec<String> STRING = 
+			new CatalogValueCodec<String>() {
+		@Override
+		public void write(String value, DataOutput out) throws IOException
+		{
+			writeBytes(value.getBytes(StandardCharsets.UTF_8), out);
+		}
+		
+		@Override
+		public String read(DataInput in) throws IOException
+		{
+			return new String(readBytes(in), StandardCharsets.UTF_8);
+		}
+	};
+	
+	private static final CatalogValueCodec<Serializable> SERIALIZABLE = 
+			new CatalogValueCodec<Serializable>() {
+		@Override
+		public void write(Serializable value, DataOutput out) 
+				throws IOException
+		{
+			ByteArrayOutputStream baos = new ByteArrayOutputStream();
+			try (ObjectOutputStream oos = new ObjectOutputStream(baos))
+			{
+				oos.writeObject(value);
+			}
+			writeBytes(baos.toByteArray(), out);
+		}
+		
+		@Override
+		public Serializable read(DataInput in) throws IOException
+		{
+			try (ObjectInputStream ois = new ObjectInputStream(
+					new ByteArrayInputStream(readBytes(in))))
+			{
+				return (Serializable) ois.readObject();
+			}
+			catch (ClassNotFoundException e)
+			{
+				InvalidObjectException ioe = new InvalidObjectException(
+						e.getMessage());
+				ioe.initCause(e);
+				throw ioe;
+			}
+		}
+	};
+	
+	/**
+	 * Returns a codec that encodes values with Java serialization.  Compact
+	 * codecs written for the value type should be preferred
+	 * 
+	 * @return
+	 * a codec for serializable values
+	 */
+	@SuppressWarnings("unchecked")
+	public static <V extends Serializable> CatalogValueCodec<V> serializable()
+	{
+		return (CatalogValueCodec<V>) SERIALIZABLE;
+	}
+}
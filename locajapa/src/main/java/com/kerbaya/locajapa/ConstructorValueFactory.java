@@ -0,0 +1,127 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.util.Arrays;
+
+/**
+ * A {@link ValueFactory} that passes the value properties to a constructor,
+ * through a {@link MethodHandle} bound when the factory is created.  Up to
+ * {@link #MAX_DIRECT_ARITY} properties are passed as separate arguments;
+ * larger constructors receive a copy of the row's properties.
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ *
+ */
+final class ConstructorValueFactory<V> implements ValueFactory<V>
+{
+	private static final int MAX_DIRECT_ARITY = 8;
+	
+	private final int arity;
+	private final MethodHandle handle;
+	
+	public ConstructorValueFactory(Constructor<? extends V> valueCtor)
+	{
+		arity = valueCtor.getParameterTypes().length;
+		MethodHandle ctorHandle;
+		try
+		{
+			ctorHandle = MethodHandles.publicLookup().unreflectConstructor(
+					valueCtor);
+		}
+		catch (IllegalAccessException e)
+		{
+			throw new IllegalArgumentException(e);
+		}
+		if (arity <= MAX_DIRECT_ARITY)
+		{
+			handle = ctorHandle.asType(MethodType.genericMethodType(arity));
+		}
+		else
+		{
+			handle = ctorHandle.asSpreader(Object[].class, arity).asType(
+					MethodType.methodType(Object.class, Object[].class));
+		}
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public V createValue(Object[] p, int o)
+	{
+		Object value;
+		try
+		{
+			switch (arity)
+			{
+			case 0:
+				value = handle.invokeExact();
+				break;
+			case 1:
+				value = handle.invokeExact(p[o]);
+				break;
+			case 2:
+				value = handle.invokeExact(p[o], p[o + 1]);
+				break;
+			case 3:
+				value = handle.invokeExact(p[o], p[o + 1], p[o + 2]);
+				break;
+			case 4:
+				value = handle.invokeExact(
+						p[o], p[o + 1], p[o + 2], p[o + 3]);
+				break;
+			case 5:
+				value = handle.invokeExact(
+						p[o], p[o + 1], p[o + 2], p[o + 3], p[o + 4]);
+				break;
+			case 6:
+				value = handle.invokeExact(
+						p[o], p[o + 1], p[o + 2], p[o + 3], p[o + 4], 
+						p[o + 5]);
+				break;
+			case 7:
+				value = handle.invokeExact(
+						p[o], p[o + 1], p[o + 2], p[o + 3], p[o + 4], 
+						p[o + 5], p[o + 6]);
+				break;
+			case 8:
+				value = handle.invokeExact(
+						p[o], p[o + 1], p[o + 2], p[o + 3], p[o + 4], 
+						p[o + 5], p[o + 6], p[o + 7]);
+				break;
+			default:
+				value = handle.invokeExact(
+						Arrays.copyOfRange(p, o, o + arity));
+				break;
+			}
+		}
+		catch (Error e)
+		{
+			throw e;
+		}
+		catch (Throwable e)
+		{
+			throw new IllegalStateException(e);
+		}
+		return (V) value;
+	}
+}
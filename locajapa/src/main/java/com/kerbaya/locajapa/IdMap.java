@@ -0,0 +1,364 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * A map of localizable IDs to loader entries.  While every key is a Long (or 
+ * every key is an Integer), keys are held as primitives in an open-addressing
+ * table, and entries in flat arrays, in insertion order; the first key of 
+ * another type moves the entries to a HashMap.  Removed entries keep their 
+ * slot until the map is cleared, and are revived when their key is put again
+ */
+final class IdMap<E> extends AbstractMap<Object, E>
+{
+	private static final int INIT_CAPACITY = 8;
+	
+	/*
+	 * Stands in for the values of removed entries
+	 */
+	private static final Object REMOVED = new Object();
+	
+	private Class<?> keyType;
+	private long[] keys;
+	private Object[] values;
+	
+	/*
+	 * Dense indexes plus one, or zero for empty slots.  The length is a power
+	 * of two
+	 */
+	private int[] table;
+	private int count;
+	private int size;
+	private Map<Object, E> fallback;
+	
+	public IdMap()
+	{
+	}
+	
+	public IdMap(Map<?, ? extends E> m)
+	{
+		putAll(m);
+	}
+	
+	private static int hash(long key)
+	{
+		int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+	
+	private Object box(long key)
+	{
+		return keyType == Long.class ? 
+				(Object) Long.valueOf(key) : (Object) Integer.valueOf((int) key);
+	}
+	
+	/*
+	 * Returns the dense index of a key, or -1 minus the empty slot where it
+	 * would be added
+	 */
+	private int find(long key)
+	{
+		int mask = table.length - 1;
+		for (int i = hash(key) & mask;; i = (i + 1) & mask)
+		{
+			int d = table[i];
+			if (d == 0)
+			{
+				return -1 - i;
+			}
+			if (keys[d - 1] == key)
+			{
+				return d - 1;
+			}
+		}
+	}
+	
+	/*
+	 * Returns the dense index of a live entry, or -1
+	 */
+	private int indexOf(Object key)
+	{
+		if (keyType == null || key == null || key.getClass() != keyType)
+		{
+			return -1;
+		}
+		int i = find(((Number) key).longValue());
+		return i < 0 || values[i] == REMOVED ? -1 : i;
+	}
+	
+	private void rehash(int tableLength)
+	{
+		table = new int[tableLength];
+		int mask = tableLength - 1;
+		for (int d = 0; d < count; d++)
+		{
+			int i = hash(keys[d]) & mask;
+			while (table[i] != 0)
+			{
+				i = (i + 1) & mask;
+			}
+			table[i] = d + 1;
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void toFallback()
+	{
+		fallback = new HashMap<>(Math.max(size * 4 / 3 + 1, 16));
+		for (int d = 0; d < count; d++)
+		{
+			if (values[d] != REMOVED)
+			{
+				fallback.put(box(keys[d]), (E) values[d]);
+			}
+		}
+		keys = null;
+		values = null;
+		table = null;
+	}
+	
+	@Override
+	public int size()
+	{
+		return fallback == null ? size : fallback.size();
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return fallback == null ? 
+				indexOf(key) >= 0 : fallback.containsKey(key);
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public E get(Object key)
+	{
+		if (fallback != null)
+		{
+			return fallback.get(key);
+		}
+		int i = indexOf(key);
+		return i < 0 ? null : (E) values[i];
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public E put(Object key, E value)
+	{
+		if (fallback == null && keyType == null)
+		{
+			if (key instanceof Long || key instanceof Integer)
+			{
+				keyType = key.getClass();
+				keys = new long[INIT_CAPACITY];
+				values = new Object[INIT_CAPACITY];
+				table = new int[INIT_CAPACITY * 2];
+			}
+			else
+			{
+				fallback = new HashMap<>();
+			}
+		}
+		else if (fallback == null && key.getClass() != keyType)
+		{
+			toFallback();
+		}
+		if (fallback != null)
+		{
+			return fallback.put(key, value);
+		}
+		
+		long k = ((Number) key).longValue();
+		int i = find(k);
+		if (i >= 0)
+		{
+			Object old = values[i];
+			values[i] = value;
+			if (old == REMOVED)
+			{
+				size++;
+				return null;
+			}
+			return (E) old;
+		}
+		if (count == keys.length)
+		{
+			keys = Arrays.copyOf(keys, count * 2);
+			values = Arrays.copyOf(values, count * 2);
+		}
+		if ((count + 1) * 4 > table.length * 3)
+		{
+			rehash(table.length * 2);
+			i = find(k);
+		}
+		keys[count] = k;
+		values[count] = value;
+		table[-1 - i] = ++count;
+		size++;
+		return null;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public E remove(Object key)
+	{
+		if (fallback != null)
+		{
+			return fallback.remove(key);
+		}
+		int i = indexOf(key);
+		if (i < 0)
+		{
+			return null;
+		}
+		Object old = values[i];
+		values[i] = REMOVED;
+		size--;
+		return (E) old;
+	}
+	
+	@Override
+	public void clear()
+	{
+		if (fallback != null)
+		{
+			fallback.clear();
+		}
+		else if (keyType != null)
+		{
+			Arrays.fill(table, 0);
+			Arrays.fill(values, 0, count, null);
+			count = 0;
+			size = 0;
+		}
+	}
+	
+	private final class IdEntry implements Map.Entry<Object, E>
+	{
+		private final int index;
+		
+		public IdEntry(int index)
+		{
+			this.index = index;
+		}
+		
+		@Override
+		public Object getKey()
+		{
+			return box(keys[index]);
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public E getValue()
+		{
+			return (E) values[index];
+		}
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public E setValue(E value)
+		{
+			Object old = values[index];
+			values[index] = value;
+			return (E) old;
+		}
+	}
+	
+	private final class IdIterator implements Iterator<Map.Entry<Object, E>>
+	{
+		private int next;
+		private int last = -1;
+		
+		private void skipRemoved()
+		{
+			while (next < count && values[next] == REMOVED)
+			{
+				next++;
+			}
+		}
+		
+		@Override
+		public boolean hasNext()
+		{
+			skipRemoved();
+			return next < count;
+		}
+		
+		@Override
+		public Map.Entry<Object, E> next()
+		{
+			if (!hasNext())
+			{
+				throw new NoSuchElementException();
+			}
+			last = next++;
+			return new IdEntry(last);
+		}
+		
+		@Override
+		public void remove()
+		{
+			if (last < 0)
+			{
+				throw new IllegalStateException();
+			}
+			values[last] = REMOVED;
+			size--;
+			last = -1;
+		}
+	}
+	
+	@Override
+	public Set<Map.Entry<Object, E>> entrySet()
+	{
+		if (fallback != null)
+		{
+			return fallback.entrySet();
+		}
+		return new AbstractSet<Map.Entry<Object, E>>()
+		{
+			@Override
+			public Iterator<Map.Entry<Object, E>> iterator()
+			{
+				if (fallback != null)
+				{
+					return fallback.entrySet().iterator();
+				}
+				return new IdIterator();
+			}
+			
+			@Override
+			public int size()
+			{
+				return IdMap.this.size();
+			}
+		};
+	}
+}
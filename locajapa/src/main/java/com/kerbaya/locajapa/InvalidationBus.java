@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+/**
+ * Delivers {@link CacheInvalidation} instances to the {@link LocalizedCache} 
+ * instances that subscribed to it.  {@link LocalInvalidationBus} delivers 
+ * within the JVM; implementations backed by a messaging system can deliver to
+ * the caches of other processes.
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public interface InvalidationBus
+{
+	/**
+	 * Invalidates the entries described by an invalidation in every 
+	 * subscribed cache
+	 * 
+	 * @param invalidation
+	 * the entries to invalidate
+	 */
+	void publish(CacheInvalidation invalidation);
+	
+	/**
+	 * Starts delivering published invalidations to a cache
+	 * 
+	 * @param cache
+	 * the cache to invalidate
+	 */
+	void subscribe(LocalizedCache cache);
+	
+	/**
+	 * Stops delivering published invalidations to a cache
+	 * 
+	 * @param cache
+	 * the cache that was subscribed
+	 */
+	void unsubscribe(LocalizedCache cache);
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/*
+ * Translates between language tags and the numeric codes of a language-code
+ * property.  Codes are bound to queries as they were provided, so that their
+ * type matches the property, and decoded by their int value
+ */
+final class LanguageCodes
+{
+	private final Map<String, Number> codes = new HashMap<>();
+	private final Map<Integer, String> languageTags = new HashMap<>();
+	
+	public LanguageCodes(Map<? extends Number, String> languageTags)
+	{
+		if (languageTags.isEmpty())
+		{
+			throw new IllegalArgumentException("No language codes");
+		}
+		for (Map.Entry<? extends Number, String> e: languageTags.entrySet())
+		{
+			Number code = Objects.requireNonNull(e.getKey());
+			String languageTag = LocaleRegistry.getLocale(
+					Objects.requireNonNull(e.getValue())).toLanguageTag();
+			if (codes.put(languageTag, code) != null
+					|| this.languageTags.put(code.intValue(), languageTag) 
+							!= null)
+			{
+				throw new IllegalArgumentException(
+						"Duplicate language code mapping: " 
+						+ code + "=" + languageTag);
+			}
+		}
+	}
+	
+	/*
+	 * Language tags without a code are left out, since no row can match them
+	 */
+	public List<Number> getCodes(Collection<String> languageTags)
+	{
+		List<Number> result = new ArrayList<>(languageTags.size());
+		for (String languageTag: languageTags)
+		{
+			Number code = codes.get(languageTag);
+			if (code != null)
+			{
+				result.add(code);
+			}
+		}
+		return result;
+	}
+	
+	/*
+	 * Returns false if none of the language tags has a code
+	 */
+	public boolean hasCode(Collection<String> languageTags)
+	{
+		for (String languageTag: languageTags)
+		{
+			if (codes.containsKey(languageTag))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/*
+	 * Returns null for a null code, as selected by an outer join without 
+	 * localized rows, and for a code without a language tag: readers skip 
+	 * such rows, since they cannot be resolved to a locale
+	 */
+	public String getLanguageTag(Object code)
+	{
+		if (code == null)
+		{
+			return null;
+		}
+		return languageTags.get(((Number) code).intValue());
+	}
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Gives each known language tag a small, process-wide integer code, so that 
+ * candidate ranking is integer work.  Tags become known as candidates of a 
+ * locale (see LocaleRegistry); the language tags of localized rows are only
+ * looked up.  Once MAX_SIZE tags are known, new tags get no code, and are 
+ * compared as strings instead
+ */
+final class LanguageTagDictionary
+{
+	private static final int MAX_SIZE = 1 << 16;
+	
+	private static final ConcurrentMap<String, Integer> CODES = 
+			new ConcurrentHashMap<>();
+	
+	private LanguageTagDictionary() {}
+	
+	/*
+	 * Returns the code of a language tag, which is assigned if the tag is not
+	 * known yet, or -1 if the dictionary is full
+	 */
+	public static int getCode(String languageTag)
+	{
+		Integer code = CODES.get(languageTag);
+		if (code != null)
+		{
+			return code;
+		}
+		
+		/*
+		 * Codes are assigned under a lock, so that they stay dense
+		 */
+		synchronized (CODES)
+		{
+			code = CODES.get(languageTag);
+			if (code == null)
+			{
+				if (CODES.size() == MAX_SIZE)
+				{
+					return -1;
+				}
+				code = CODES.size();
+				CODES.put(languageTag, code);
+			}
+			return code;
+		}
+	}
+	
+	/*
+	 * Returns the code of a known language tag, or -1
+	 */
+	public static int peekCode(String languageTag)
+	{
+		Integer code = CODES.get(languageTag);
+		return code == null ? -1 : code;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.Locale;
+import java.util.Map;
+
+/*
+ * Binds a LocalizedCache to the entries of one LoaderFactory: its entity name
+ * and value selection, so that factories that select different values from 
+ * the same entity do not share entries.  The value selection is compared with
+ * equals
+ */
+final class LoaderCache
+{
+	private final LocalizedCache cache;
+	private final String entityName;
+	private final Object valueSelection;
+	
+	public LoaderCache(
+			LocalizedCache cache, String entityName, Object valueSelection)
+	{
+		this.cache = cache;
+		this.entityName = entityName;
+		this.valueSelection = valueSelection;
+	}
+	
+	/*
+	 * Returns null on a miss, or a masked value (see LocalizedCache.unmask)
+	 */
+	public Object getValue(Object id, Locale locale)
+	{
+		return cache.get(entityName, valueSelection, id, locale);
+	}
+	
+	/*
+	 * A load reads the invalidation count before it reads the cache or the 
+	 * database, and passes it to its puts and claims
+	 */
+	public long getInvalidationCount()
+	{
+		return cache.getInvalidationCount();
+	}
+	
+	public void putValue(
+			Object id, Locale locale, Object value, long invalidationCount)
+	{
+		cache.put(
+				entityName, 
+				valueSelection, 
+				id, 
+				locale, 
+				value, 
+				invalidationCount);
+	}
+	
+	/*
+	 * Returns null on a miss
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> Map<Locale, V> getMap(Object id)
+	{
+		return (Map<Locale, V>) cache.get(entityName, valueSelection, id, null);
+	}
+	
+	public void putMap(Object id, Map<Locale, ?> map, long invalidationCount)
+	{
+		cache.put(entityName, valueSelection, id, null, map, invalidationCount);
+	}
+	
+	public void patch(Object id, Map<Locale, ?> changes)
+	{
+		cache.patch(entityName, valueSelection, id, changes);
+	}
+	
+	public void invalidateAll()
+	{
+		cache.invalidate(CacheInvalidation.forEntity(entityName));
+	}
+	
+	public LocalizedCache.Flight claimValue(
+			Object id, Locale locale, long invalidationCount)
+	{
+		return cache.claim(
+				entityName, valueSelection, id, locale, invalidationCount);
+	}
+	
+	public LocalizedCache.Flight claimMap(Object id, long invalidationCount)
+	{
+		return cache.claim(
+				entityName, valueSelection, id, null, invalidationCount);
+	}
+}
@@ -18,13 +18,26 @@
  */
 package com.kerbaya.locajapa;
 
+import java.io.IOException;
 import java.lang.reflect.Constructor;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
+import javax.persistence.EntityManager;
+
+import com.kerbaya.locajapa.QueryBuilder.CatalogQueryBuilder;
 import com.kerbaya.locajapa.QueryBuilder.MapQueryBuilder;
+import com.kerbaya.locajapa.QueryBuilder.RefreshQueryBuilder;
 import com.kerbaya.locajapa.QueryBuilder.ValueQueryBuilder;
 
 /**
@@ -56,11 +69,17 @@ public final class LoaderFactory<T, V>
 	 * <li>{@link #setLanguageLevelProperty(String)}</li>
 	 * <li>{@link #setLocalizedProperty(String)}</li>
 	 * <li>One of:<ul>
+	 *     <li>{@link #setLanguageTagProperty(String)}</li>
+	 *     <li>{@link #setLanguageCodeProperty(String, Map)}</li>
+	 * </li></ul>
+	 * <li>One of:<ul>
 	 *     <li>{@link #setValueProperty(String)}</li>
 	 *     <li>{@link #setValueCtor(Class, List)}</li>
 	 *     <li>{@link #setValueCtor(Class, String...)}</li>
 	 *     <li>{@link #setValueCtor(Constructor, List)}</li>
 	 *     <li>{@link #setValueCtor(Constructor, String...)}</li>
+	 *     <li>{@link #setValueFactory(ValueFactory, List)}</li>
+	 *     <li>{@link #setValueFactory(ValueFactory, String...)}</li>
 	 * </li></ul>
 	 * </ul>
 	 * 
@@ -200,6 +219,8 @@ public final class LoaderFactory<T, V>
 		 * <li>{@link #setValueCtor(Class, String...)}</li>
 		 * <li>{@link #setValueCtor(Constructor, List)}</li>
 		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
 		 * </ul>
 		 */
 		public Builder<T, V> setValueCtor(
@@ -242,6 +263,8 @@ public final class LoaderFactory<T, V>
 		 * <li>{@link #setValueCtor(Class, String...)}</li>
 		 * <li>{@link #setValueCtor(Constructor, List)}</li>
 		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
 		 * </ul>
 		 */
 		public Builder<T, V> setValueCtor(
@@ -266,7 +289,7 @@ public final class LoaderFactory<T, V>
 		 * 
 		 * @throws IllegalArgumentException
 		 * thrown when {@code valueCtor} has a number of arguments that does not 
-		 * match the size of {@code valueProperties}
+		 * match the size of {@code valueProperties}, or is not accessible
 		 * 
 		 * @throws IllegalStateException
 		 * Either the instance is read-only, or one of the following methods
@@ -277,6 +300,8 @@ public final class LoaderFactory<T, V>
 		 * <li>{@link #setValueCtor(Class, String...)}</li>
 		 * <li>{@link #setValueCtor(Constructor, List)}</li>
 		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
 		 * </ul>
 		 */
 		public Builder<T, V> setValueCtor(
@@ -303,7 +328,7 @@ public final class LoaderFactory<T, V>
 		 * 
 		 * @throws IllegalArgumentException
 		 * thrown when {@code valueCtor} has a number of arguments that does not 
-		 * match the length of {@code valueProperties}
+		 * match the length of {@code valueProperties}, or is not accessible
 		 * 
 		 * @throws IllegalStateException
 		 * Either the instance is read-only, or one of the following methods
@@ -314,6 +339,8 @@ public final class LoaderFactory<T, V>
 		 * <li>{@link #setValueCtor(Class, String...)}</li>
 		 * <li>{@link #setValueCtor(Constructor, List)}</li>
 		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
 		 * </ul>
 		 */
 		public Builder<T, V> setValueCtor(
@@ -322,6 +349,86 @@ public final class LoaderFactory<T, V>
 			return setValueCtor(valueCtor, Arrays.asList(valueProperties));
 		}
 		
+		/**
+		 * Specifies how the localized value should be created from the
+		 * localized entity JPQL properties.  The value properties are selected
+		 * in the value and map queries, and {@code valueFactory} is called
+		 * once per query result row to create the localized value.
+		 *
+		 * @param valueFactory
+		 * The factory that creates localized values from the value properties
+		 * 
+		 * @param valueProperties
+		 * The localized entity properties that will be passed to 
+		 * {@code valueFactory}, in the order they will be passed
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalArgumentException
+		 * {@code valueProperties} was empty
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or one of the following methods
+		 * were called previously on this instance:
+		 * <ul>
+		 * <li>{@link #setValueProperty(String)}</li>
+		 * <li>{@link #setValueCtor(Class, List)}</li>
+		 * <li>{@link #setValueCtor(Class, String...)}</li>
+		 * <li>{@link #setValueCtor(Constructor, List)}</li>
+		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
+		 * </ul>
+		 */
+		public Builder<T, V> setValueFactory(
+				ValueFactory<? extends V> valueFactory, 
+				List<String> valueProperties)
+		{
+			getQueryBuilder().setValueFactory(valueFactory, valueProperties);
+			return this;
+		}
+		
+		/**
+		 * Specifies how the localized value should be created from the
+		 * localized entity JPQL properties.  The value properties are selected
+		 * in the value and map queries, and {@code valueFactory} is called
+		 * once per query result row to create the localized value.
+		 *
+		 * @param valueFactory
+		 * The factory that creates localized values from the value properties
+		 * 
+		 * @param valueProperties
+		 * The localized entity properties that will be passed to 
+		 * {@code valueFactory}, in the order they will be passed
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalArgumentException
+		 * {@code valueProperties} was empty
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or one of the following methods
+		 * were called previously on this instance:
+		 * <ul>
+		 * <li>{@link #setValueProperty(String)}</li>
+		 * <li>{@link #setValueCtor(Class, List)}</li>
+		 * <li>{@link #setValueCtor(Class, String...)}</li>
+		 * <li>{@link #setValueCtor(Constructor, List)}</li>
+		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
+		 * </ul>
+		 */
+		public Builder<T, V> setValueFactory(
+				ValueFactory<? extends V> valueFactory, 
+				String... valueProperties)
+		{
+			return setValueFactory(
+					valueFactory, Arrays.asList(valueProperties));
+		}
+		
 		/**
 		 * Specifies which localized entity JPQL property will be used as the 
 		 * localized value
@@ -342,6 +449,8 @@ public final class LoaderFactory<T, V>
 		 * <li>{@link #setValueCtor(Class, String...)}</li>
 		 * <li>{@link #setValueCtor(Constructor, List)}</li>
 		 * <li>{@link #setValueCtor(Constructor, String...)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, List)}</li>
+		 * <li>{@link #setValueFactory(ValueFactory, String...)}</li>
 		 * </ul>
 		 */
 		public Builder<T, V> setValueProperty(String valueProperty)
@@ -392,6 +501,44 @@ public final class LoaderFactory<T, V>
 			return this;
 		}
 		
+		/**
+		 * Specifies a numeric localized entity JPQL property that identifies 
+		 * the entry's language, in place of a language tag property.  Queries
+		 * bind the codes of the requested language tags, and decode the 
+		 * selected codes back to language tags.
+		 * 
+		 * <p>Codes are bound as provided, so their type should match the 
+		 * property's type.  Language tags without a code cannot match any 
+		 * entry, and entries whose code has no language tag are skipped when
+		 * loading maps, preloading and refreshing.</p>
+		 * 
+		 * @param languageCodeProperty
+		 * the localized entity JPQL property for the entry's language code
+		 * 
+		 * @param languageTags
+		 * the language tag of each language code
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or this method or 
+		 * {@link #setLanguageTagProperty(String)} was already called 
+		 * previously
+		 * 
+		 * @throws IllegalArgumentException
+		 * {@code languageTags} is empty, or maps a code or a language tag more
+		 * than once
+		 */
+		public Builder<T, V> setLanguageCodeProperty(
+				String languageCodeProperty, 
+				Map<? extends Number, String> languageTags)
+		{
+			getQueryBuilder().setLanguageCodeProperty(
+					languageCodeProperty, languageTags);
+			return this;
+		}
+		
 		/**
 		 * Specifies the localized entity JPQL property for the entry's language 
 		 * level
@@ -491,6 +638,135 @@ public final class LoaderFactory<T, V>
 			return this;
 		}
 		
+		/**
+		 * Specifies whether the last, partial batch of a load should be padded
+		 * so that fewer distinct queries reach the database.  When enabled, the
+		 * number of ID parameters in a query is rounded up to the next power of
+		 * two (capped at the maximum batch size), and the extra parameters 
+		 * repeat an ID that is already in the batch.  This keeps the number of
+		 * query shapes per entity type logarithmic in the maximum batch size,
+		 * which is kinder to query-plan and statement caches.  Default value is
+		 * {@code false}
+		 * 
+		 * @param batchPadding
+		 * {@code true} to pad partial batches
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or this method was already called
+		 * previously
+		 */
+		public Builder<T, V> setBatchPadding(boolean batchPadding)
+		{
+			getQueryBuilder().setBatchPadding(batchPadding);
+			return this;
+		}
+		
+		/**
+		 * Specifies how value loaders resolve the best-matching localized 
+		 * value when loading by query.  Default value is 
+		 * {@link ValueResolution#SUBQUERY}
+		 * 
+		 * @param valueResolution
+		 * the resolution strategy used by value loaders created by the
+		 * {@link LoaderFactory}
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or this method was already called
+		 * previously
+		 */
+		public Builder<T, V> setValueResolution(ValueResolution valueResolution)
+		{
+			getQueryBuilder().setValueResolution(valueResolution);
+			return this;
+		}
+		
+		/**
+		 * Specifies a cache that value and map loaders created by the 
+		 * {@link LoaderFactory} consult before querying, and populate with the
+		 * results of their queries.  Locale-filtered map loaders and 
+		 * multi-locale value loaders do not use the cache.  By default, no 
+		 * cache is used
+		 * 
+		 * @param cache
+		 * the cache to be used by the loaders
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or this method was already called
+		 * previously
+		 */
+		public Builder<T, V> setCache(LocalizedCache cache)
+		{
+			getQueryBuilder().setCache(cache);
+			return this;
+		}
+		
+		/**
+		 * Specifies the property of the localized entity that increases 
+		 * whenever a localized row is inserted or updated, such as a version
+		 * number or a last-modified timestamp, so that {@link #refresh} can
+		 * patch the cache and the preloaded snapshot with the rows changed 
+		 * since its previous call
+		 * 
+		 * <p>{@link #refresh} only reads the rows with a version above the 
+		 * highest one it has seen, so the version must increase in commit 
+		 * order: a row committed after a row with a higher version is never
+		 * read.  A sequence or timestamp assigned before a long transaction 
+		 * commits does not meet this; invalidate the rows of such 
+		 * transactions with a {@link CacheInvalidation} instead.</p>
+		 * 
+		 * @param versionProperty
+		 * the name of the version property of the localized entity
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or this method was already called
+		 * previously
+		 */
+		public Builder<T, V> setVersionProperty(String versionProperty)
+		{
+			getQueryBuilder().setVersionProperty(versionProperty);
+			return this;
+		}
+		
+		/**
+		 * Specifies whether values configured with one of the 
+		 * {@code setValueCtor} methods should be created by the JPA provider,
+		 * using a JPQL constructor expression ({@code NEW pkg.Type(...)}), 
+		 * rather than from the selected columns after each row is read.  This
+		 * avoids an intermediate {@code Object[]} per value, but requires a 
+		 * provider that supports constructor expressions alongside other 
+		 * select items, and a public top-level value type (nested types 
+		 * cannot be named portably in JPQL).  Default value is 
+		 * {@code false}
+		 * 
+		 * @param constructorExpression
+		 * {@code true} to select values with a constructor expression
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * Either the instance is read-only, or this method was already called
+		 * previously
+		 */
+		public Builder<T, V> setConstructorExpression(
+				boolean constructorExpression)
+		{
+			getQueryBuilder().setConstructorExpression(constructorExpression);
+			return this;
+		}
+		
 		/**
 		 * Creates the {@link LoaderFactory} instance
 		 * 
@@ -504,6 +780,10 @@ public final class LoaderFactory<T, V>
 		 * query-loading</li>
 		 * <li>The builder was partially configured for query-loading, some
 		 * query-loading setters were called, but not all that were required<li>
+		 * <li>Constructor expressions were enabled, but the value was not 
+		 * configured with a {@code setValueCtor} method</li>
+		 * <li>Constructor expressions were enabled, but the value type is
+		 * not a top-level type</li>
 		 * </ul>
 		 */
 		public LoaderFactory<T, V> build()
@@ -531,7 +811,15 @@ public final class LoaderFactory<T, V>
 	
 	private final EntityHandler<? super T, ?, ? extends V> entityHandler;
 	private final ValueQueryBuilder<V> vqb;
+	private final ValueQueryBuilder<V> inMemoryVqb;
+	private final AdaptiveResolution<V> adaptiveResolution;
 	private final MapQueryBuilder<V> mqb;
+	private final MapQueryBuilder<V> filteredMqb;
+	private final LoaderCache cache;
+	private final CacheRefresher<V> refresher;
+	private final CatalogQueryBuilder<V> cqb;
+	private final AtomicReference<CatalogSnapshot<V>> snapshot = 
+			new AtomicReference<>();
 	
 	private LoaderFactory(
 			EntityHandler<? super T, ?, ? extends V> entityHandler,
@@ -541,12 +829,48 @@ public final class LoaderFactory<T, V>
 		if (queryBuilder == null)
 		{
 			vqb = null;
+			inMemoryVqb = null;
+			adaptiveResolution = null;
 			mqb = null;
+			filteredMqb = null;
+			cache = null;
+			refresher = null;
+			cqb = null;
 		}
 		else
 		{
-			vqb = queryBuilder.createValueQueryBuilder().asReadOnly();
+			/*
+			 * The IN_MEMORY query is also used by multi-locale loaders
+			 */
+			inMemoryVqb = queryBuilder.createValueQueryBuilder(
+					ValueResolution.IN_MEMORY).asReadOnly();
+			switch (queryBuilder.getValueResolution())
+			{
+			case IN_MEMORY:
+				vqb = inMemoryVqb;
+				adaptiveResolution = null;
+				break;
+			case ADAPTIVE:
+				vqb = queryBuilder.createValueQueryBuilder(
+						ValueResolution.SUBQUERY).asReadOnly();
+				adaptiveResolution = new AdaptiveResolution<>(
+						vqb, inMemoryVqb);
+				break;
+			default:
+				vqb = queryBuilder.createValueQueryBuilder(
+						ValueResolution.SUBQUERY).asReadOnly();
+				adaptiveResolution = null;
+				break;
+			}
 			mqb = queryBuilder.createMapQueryBuilder().asReadOnly();
+			filteredMqb = 
+					queryBuilder.createFilteredMapQueryBuilder().asReadOnly();
+			cache = queryBuilder.createLoaderCache();
+			RefreshQueryBuilder<V> rqb = 
+					queryBuilder.createRefreshQueryBuilder();
+			refresher = rqb == null ? 
+					null : new CacheRefresher<>(rqb, cache, snapshot);
+			cqb = queryBuilder.createCatalogQueryBuilder();
 		}
 	}
 	
@@ -562,7 +886,119 @@ public final class LoaderFactory<T, V>
 	 */
 	public ValueLoader<T, V> createValueLoader(Locale locale)
 	{
-		return new ValueLoaderImpl<>(locale, entityHandler, vqb);
+		return createValueLoaderImpl(locale);
+	}
+	
+	private ValueLoaderImpl<T, V> createValueLoaderImpl(Locale locale)
+	{
+		return new ValueLoaderImpl<>(
+				locale, 
+				entityHandler, 
+				vqb, 
+				adaptiveResolution, 
+				cache, 
+				snapshot.get());
+	}
+	
+	/**
+	 * Creates a new instance of {@link ValueLoader} for a specified locale, 
+	 * that resolves values from the maps of a {@link MapLoader} where it can.
+	 * When the value loader is loaded, IDs that are also registered with the 
+	 * map loader are resolved in memory from their maps (loading the map 
+	 * loader first if required), and are left out of the value query
+	 * 
+	 * @param locale
+	 * the locale for which the new {@link ValueLoader} instance will return
+	 * values/references
+	 * 
+	 * @param mapLoader
+	 * a {@link MapLoader} created by this instance with 
+	 * {@link #createMapLoader()}
+	 * 
+	 * @return
+	 * a new instance of {@link ValueLoader}
+	 * 
+	 * @throws IllegalArgumentException
+	 * {@code mapLoader} was not created by this instance
+	 */
+	public ValueLoader<T, V> createValueLoader(
+			Locale locale, MapLoader<T, V> mapLoader)
+	{
+		if (!(mapLoader instanceof MapLoaderImpl) 
+				|| ((MapLoaderImpl<T, V>) mapLoader).getMapQueryBuilder() 
+						!= mqb)
+		{
+			throw new IllegalArgumentException(
+					"MapLoader was not created by this LoaderFactory");
+		}
+		ValueLoaderImpl<T, V> valueLoader = createValueLoaderImpl(locale);
+		valueLoader.setMapLoader((MapLoaderImpl<T, V>) mapLoader);
+		return valueLoader;
+	}
+	
+	/**
+	 * <p>Creates a new instance of {@link ValueLoader} for a specified 
+	 * locale, that loads itself with a specified entity manager.  The first 
+	 * {@link ValueReference#get()} of a reference that is not yet loaded calls
+	 * {@link ValueLoader#load(EntityManager)}, which loads all of the 
+	 * references generated so far in batches.  References generated 
+	 * afterwards are loaded together by the next such call.</p>
+	 * 
+	 * <p>The new instance holds the entity manager, and every reference that 
+	 * is not yet loaded holds the instance, so the entity manager stays 
+	 * reachable for as long as the instance or any such reference is.  A 
+	 * {@link ValueReference#get()} of a reference that is not yet loaded after
+	 * the entity manager is closed fails in 
+	 * {@link ValueLoader#load(EntityManager)}, even for a reference to a 
+	 * localizable instance, which other loaders resolve with the 
+	 * {@link EntityHandler} when they are not loaded.</p>
+	 * 
+	 * @param locale
+	 * the locale for which the new {@link ValueLoader} instance will return
+	 * values/references
+	 * 
+	 * @param em
+	 * the entity manager associated with the localizable instances that will
+	 * be provided to the new {@link ValueLoader} instance
+	 * 
+	 * @return
+	 * a new instance of {@link ValueLoader}
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support query-loading
+	 */
+	public ValueLoader<T, V> createValueLoader(Locale locale, EntityManager em)
+	{
+		if (vqb == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		ValueLoaderImpl<T, V> valueLoader = createValueLoaderImpl(locale);
+		valueLoader.setAutoLoad(Objects.requireNonNull(em));
+		return valueLoader;
+	}
+	
+	/**
+	 * Creates a new instance of {@link MultiLocaleValueLoader} for a specified
+	 * set of locales.  When loading by query, each batch is loaded with a 
+	 * single query execution for all of the locales, whatever 
+	 * {@link ValueResolution} this instance was configured with
+	 * 
+	 * @param locales
+	 * the locales for which the new {@link MultiLocaleValueLoader} instance
+	 * will return values/references
+	 * 
+	 * @return
+	 * a new instance of {@link MultiLocaleValueLoader}
+	 * 
+	 * @throws IllegalArgumentException
+	 * {@code locales} is empty
+	 */
+	public MultiLocaleValueLoader<T, V> createMultiLocaleValueLoader(
+			Set<Locale> locales)
+	{
+		return new MultiLocaleValueLoaderImpl<>(
+				locales, entityHandler, inMemoryVqb);
 	}
 	
 	/**
@@ -573,6 +1009,322 @@ public final class LoaderFactory<T, V>
 	 */
 	public MapLoader<T, V> createMapLoader()
 	{
-		return new MapLoaderImpl<>(entityHandler, mqb);
+		return new MapLoaderImpl<>(
+				entityHandler, mqb, null, cache, snapshot.get());
+	}
+	
+	/**
+	 * Creates a new instance of {@link MapLoader} whose maps only contain 
+	 * values for a specified set of locales.  When loading by query, the 
+	 * language tags are filtered by the database, so values for other locales 
+	 * are never read
+	 * 
+	 * @param locales
+	 * the locales to include in the maps
+	 * 
+	 * @param includeFallbacks
+	 * {@code true} to also include the locales that {@code locales} fall back
+	 * to (e.g. {@code fr} and {@link Locale#ROOT} for {@code fr-CA})
+	 * 
+	 * @return
+	 * a new instance of {@link MapLoader}
+	 * 
+	 * @throws IllegalArgumentException
+	 * {@code locales} is empty
+	 */
+	public MapLoader<T, V> createMapLoader(
+			Set<Locale> locales, boolean includeFallbacks)
+	{
+		if (locales.isEmpty())
+		{
+			throw new IllegalArgumentException("No locales");
+		}
+		Set<String> languageTags = new LinkedHashSet<>();
+		for (Locale locale: locales)
+		{
+			if (includeFallbacks)
+			{
+				languageTags.addAll(Utils.getCandidateLanguageTags(locale));
+			}
+			else
+			{
+				languageTags.add(locale.toLanguageTag());
+			}
+		}
+		return new MapLoaderImpl<>(
+				entityHandler, 
+				filteredMqb, 
+				Collections.unmodifiableSet(languageTags),
+				null,
+				snapshot.get());
+	}
+	
+	/**
+	 * <p>Reads every localized row of the entity with a single query, and 
+	 * keeps an immutable snapshot of them, in which the values of 
+	 * {@code locales} are resolved in advance.  Value and map loaders created
+	 * by this instance afterwards resolve the references and maps of the IDs
+	 * in the snapshot as soon as they are requested, without querying.  IDs 
+	 * that had no localized rows when the snapshot was read, such as entities
+	 * persisted afterwards, are loaded as without a snapshot.  Intended for 
+	 * small entities that are read often.</p>
+	 * 
+	 * <p>Calling this method again reloads the snapshot: loaders created 
+	 * before the reload keep the previous snapshot, and loaders created after
+	 * it use the new one.  With a version property, {@link #refresh} patches 
+	 * the snapshot with the rows changed since it was read.</p>
+	 * 
+	 * @param em
+	 * the entity manager used to read the localized rows
+	 * 
+	 * @param locales
+	 * the locales whose values are resolved in advance; values of other 
+	 * locales are resolved on demand from the snapshot
+	 * 
+	 * @return
+	 * the number of localizable entity instances that have localized rows
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support query-loading
+	 */
+	@SuppressWarnings("unchecked")
+	public int preload(EntityManager em, Set<Locale> locales)
+	{
+		if (cqb == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		
+		Object watermark = refresher == null ? 
+				null : refresher.readWatermark(em);
+		Map<Object, Map<Locale, V>> rows = new HashMap<>();
+		for (Object[] row: (List<Object[]>) em.createQuery(
+				cqb.getQueryText()).getResultList())
+		{
+			String languageTag = cqb.getLanguageTag(row);
+			if (languageTag == null)
+			{
+				continue;
+			}
+			Locale locale = LocaleRegistry.getLocale(languageTag);
+			Object id = CatalogQueryBuilder.getLocalizableId(row);
+			Map<Locale, V> map = rows.get(id);
+			if (map == null)
+			{
+				map = new HashMap<>();
+				rows.put(id, map);
+			}
+			map.put(locale, cqb.getValue(row));
+		}
+		CatalogSnapshot<V> loaded = new CatalogSnapshot.InMemory<>(
+				rows, new HashSet<>(locales), watermark);
+		snapshot.set(loaded);
+		if (refresher != null)
+		{
+			refresher.seed(watermark);
+		}
+		return loaded.size();
+	}
+	
+	/**
+	 * Writes the snapshot read by {@link #preload} to a compact binary file, 
+	 * along with its version watermark, so that another instance for the same
+	 * entity can reopen it with {@link #openPreload} instead of querying
+	 * 
+	 * @param file
+	 * the file to write, replaced if it exists.  The file is written under a 
+	 * temporary name in the same directory, then atomically moved into place
+	 * 
+	 * @param codec
+	 * writes the localized values
+	 * 
+	 * @throws IOException
+	 * the file could not be written, would exceed 2 GB (the size limit of a 
+	 * memory-mapped file), or an ID or the watermark is not 
+	 * {@link java.io.Serializable}
+	 * 
+	 * @throws IllegalStateException
+	 * this instance is not preloaded
+	 */
+	public void savePreload(Path file, CatalogValueCodec<? super V> codec) 
+			throws IOException
+	{
+		CatalogSnapshot<V> current = snapshot.get();
+		if (current == null)
+		{
+			throw new IllegalStateException("not preloaded");
+		}
+		CatalogFile.write(current, file, cqb.getQueryText(), codec);
+	}
+	
+	/**
+	 * <p>Reopens a file written by {@link #savePreload} as the snapshot of this
+	 * instance, without querying.  The file is memory-mapped, and the values of
+	 * an ID are decoded when a loader first requests them.  The file must not
+	 * be modified while it is in use.</p>
+	 * 
+	 * <p>With a version property, {@link #refresh} continues from the 
+	 * watermark saved in the file (or from its own, if that is lower), and 
+	 * patches the snapshot with the rows changed since it was saved.</p>
+	 * 
+	 * @param file
+	 * the file to open
+	 * 
+	 * @param codec
+	 * reads the localized values
+	 * 
+	 * @return
+	 * the number of localizable entity instances that have localized rows
+	 * 
+	 * @throws IOException
+	 * the file could not be read, is not a catalog file, or exceeds 2 GB
+	 * 
+	 * @throws IllegalArgumentException
+	 * the file was saved by an instance for another entity or value property
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support query-loading
+	 */
+	public int openPreload(Path file, CatalogValueCodec<? extends V> codec) 
+			throws IOException
+	{
+		if (cqb == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		CatalogSnapshot<V> opened = CatalogFile.<V>open(
+				file, cqb.getQueryText(), codec);
+		snapshot.set(opened);
+		if (refresher != null)
+		{
+			refresher.seed(opened.getWatermark());
+		}
+		return opened.size();
+	}
+	
+	/**
+	 * Discards the snapshot read by {@link #preload}, so that loaders created
+	 * afterwards query again
+	 */
+	public void discardPreload()
+	{
+		snapshot.set(null);
+	}
+	
+	/**
+	 * @return
+	 * {@code true} if loaders created by this instance are resolved from a 
+	 * snapshot read by {@link #preload}
+	 */
+	public boolean isPreloaded()
+	{
+		return snapshot.get() != null;
+	}
+	
+	/**
+	 * Returns the number of distinct query texts that have been generated so
+	 * far for loaders created by this instance.  Each combination of query type
+	 * and parameter count is generated once and then reused by every loader.
+	 * 
+	 * @return
+	 * the number of distinct query texts generated so far (zero if this 
+	 * instance does not support query-loading)
+	 */
+	public int getQueryShapeCount()
+	{
+		if (vqb == null)
+		{
+			return 0;
+		}
+		int count = vqb.getQueryShapeCount() 
+				+ mqb.getQueryShapeCount() 
+				+ filteredMqb.getQueryShapeCount();
+		if (inMemoryVqb != vqb)
+		{
+			count += inMemoryVqb.getQueryShapeCount();
+		}
+		return count;
+	}
+	
+	/**
+	 * <p>Patches the cached maps and values of this instance with the localized
+	 * rows inserted or updated since the previous call, instead of 
+	 * invalidating them.  Cached values are resolved again from the patched 
+	 * map of their ID, or removed if the map is not cached.  A snapshot read by
+	 * {@link #preload} or {@link #openPreload} is patched as well.</p>
+	 * 
+	 * <p>The first call only records the highest version, so it should be made
+	 * before the cache is populated.  Deleted rows are not detected, nor are 
+	 * rows committed with a version lower than one already read (see 
+	 * {@link Builder#setVersionProperty(String)}): publish a 
+	 * {@link CacheInvalidation} for those.</p>
+	 * 
+	 * @param em
+	 * the entity manager used to query the changed rows
+	 * 
+	 * @return
+	 * the number of changed rows applied to the cache
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance was not configured with a version property
+	 */
+	public int refresh(EntityManager em)
+	{
+		if (refresher == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		return refresher.refresh(em);
+	}
+	
+	/**
+	 * Returns the strategy that value loaders created by this instance 
+	 * currently use to resolve values when loading by query.  For a factory 
+	 * configured with {@link ValueResolution#ADAPTIVE}, this is the strategy 
+	 * that the factory has settled on, or the one being sampled while 
+	 * {@link #isValueResolutionSampling()} returns {@code true}, and is never
+	 * {@link ValueResolution#ADAPTIVE} itself
+	 * 
+	 * @return
+	 * the current value resolution strategy, or {@code null} if this instance
+	 * does not support query-loading
+	 */
+	public ValueResolution getValueResolution()
+	{
+		if (adaptiveResolution != null)
+		{
+			return adaptiveResolution.getValueResolution();
+		}
+		return vqb == null ? null : vqb.getValueResolution();
+	}
+	
+	/**
+	 * Returns whether a factory configured with 
+	 * {@link ValueResolution#ADAPTIVE} is still sampling the strategies, in 
+	 * which case {@link #getValueResolution()} is not yet a settled choice
+	 * 
+	 * @return
+	 * {@code true} until both strategies have been timed for enough batches, 
+	 * or {@code false} if this instance was not configured with 
+	 * {@link ValueResolution#ADAPTIVE}
+	 */
+	public boolean isValueResolutionSampling()
+	{
+		return adaptiveResolution != null && adaptiveResolution.isSampling();
+	}
+	
+	/**
+	 * Returns the statistics behind the choice returned by 
+	 * {@link #getValueResolution()}, with one element per sampled strategy
+	 * 
+	 * @return
+	 * a snapshot of the value resolution statistics, or an empty list if this 
+	 * instance was not configured with {@link ValueResolution#ADAPTIVE}
+	 */
+	public List<ValueResolutionStats> getValueResolutionStats()
+	{
+		return adaptiveResolution == null ? 
+				Collections.<ValueResolutionStats>emptyList() : 
+				adaptiveResolution.getStats();
 	}
 }
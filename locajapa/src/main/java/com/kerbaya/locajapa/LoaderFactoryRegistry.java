@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.persistence.Entity;
+
+/**
+ * Process-wide registry of the {@link LoaderFactory} instances used by
+ * {@link LocalizableLoader}.  Factories are immutable, so one instance per
+ * entity type, batch size and cache is created and shared by every loader.
+ * Entries are held in {@link ClassValue}s, so they do not prevent the entity
+ * types' class loaders from being unloaded.
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ *
+ */
+final class LoaderFactoryRegistry
+{
+	private static final LoaderFactory.Builder<Localizable<?>, ?> BUILDER = 
+			LoaderFactory.<Localizable<?>, Object>builder()
+					.setIdProperty("id")
+					.setLanguageLevelProperty("languageLevel")
+					.setLanguageTagProperty("languageTag")
+					.setLocalizedProperty("localized")
+					.setValueProperty("value")
+					.setEntityHandler(LocalizableEntityHandler.INSTANCE)
+					.asReadOnly();
+	
+	/*
+	 * Identifies a factory among those of one entity type
+	 */
+	private static final class Key
+	{
+		private final int maxBatchSize;
+		private final LocalizedCache cache;
+		
+		public Key(int maxBatchSize, LocalizedCache cache)
+		{
+			this.maxBatchSize = maxBatchSize;
+			this.cache = cache;
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return maxBatchSize * 31 + System.identityHashCode(cache);
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return maxBatchSize == other.maxBatchSize
+					&& cache == other.cache;
+		}
+	}
+	
+	private static final ClassValue<Class<?>> ENTITY_TYPES = 
+			new ClassValue<Class<?>>() {
+		@Override
+		protected Class<?> computeValue(Class<?> localizableType)
+		{
+			return findEntityType(localizableType);
+		}
+	};
+	
+	private static final ClassValue<ConcurrentMap<Key, LoaderFactory<?, ?>>> 
+			FACTORIES = 
+					new ClassValue<ConcurrentMap<Key, LoaderFactory<?, ?>>>() {
+		@Override
+		protected ConcurrentMap<Key, LoaderFactory<?, ?>> computeValue(
+				Class<?> entityType)
+		{
+			return new ConcurrentHashMap<>();
+		}
+	};
+	
+	private LoaderFactoryRegistry() {}
+	
+	private static Class<?> findEntityType(Class<?> localizableType)
+	{
+		Class<?> entityType = localizableType;
+		Entity anno = null;
+		do
+		{
+			anno = entityType.getAnnotation(Entity.class);
+			if (anno != null)
+			{
+				break;
+			}
+		} while ((entityType = entityType.getSuperclass()) != null);
+		
+		if (anno == null)
+		{
+			throw new IllegalArgumentException(
+					"@Entity not found on " + localizableType);
+		}
+		return entityType;
+	}
+	
+	/**
+	 * Returns the {@code @Entity}-annotated type of a localizable type (the
+	 * type itself, or its nearest annotated superclass)
+	 * 
+	 * @throws IllegalArgumentException
+	 * neither {@code localizableType} nor any of its superclasses are annotated
+	 * with {@code @Entity}
+	 */
+	public static Class<?> getEntityType(Class<?> localizableType)
+	{
+		return ENTITY_TYPES.get(localizableType);
+	}
+	
+	@SuppressWarnings("unchecked")
+	public static <V> LoaderFactory<Localizable<? extends V>, V> 
+			getLoaderFactory(
+					Class<?> entityType, int maxBatchSize, LocalizedCache cache)
+	{
+		ConcurrentMap<Key, LoaderFactory<?, ?>> factories = 
+				FACTORIES.get(entityType);
+		Key key = new Key(maxBatchSize, cache);
+		LoaderFactory<?, ?> loaderFactory = factories.get(key);
+		if (loaderFactory == null)
+		{
+			String entityName = entityType.getAnnotation(Entity.class).name();
+			LoaderFactory.Builder<Localizable<?>, ?> builder = BUILDER.copy()
+					.setEntityName(entityName.isEmpty() ? 
+							entityType.getSimpleName() : entityName)
+					.setMaxBatchSize(maxBatchSize);
+			if (cache != null)
+			{
+				builder.setCache(cache);
+			}
+			loaderFactory = builder.build();
+			LoaderFactory<?, ?> existing = factories.putIfAbsent(
+					key, loaderFactory);
+			if (existing != null)
+			{
+				loaderFactory = existing;
+			}
+		}
+		return (LoaderFactory<Localizable<? extends V>, V>) loaderFactory;
+	}
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * An {@link InvalidationBus} that delivers invalidations synchronously to the
+ * caches of the same JVM: {@link #publish(CacheInvalidation)} returns after 
+ * every subscribed cache was invalidated.
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public final class LocalInvalidationBus implements InvalidationBus
+{
+	private final List<LocalizedCache> caches = 
+			new CopyOnWriteArrayList<>();
+	
+	@Override
+	public void publish(CacheInvalidation invalidation)
+	{
+		for (LocalizedCache cache: caches)
+		{
+			cache.invalidate(invalidation);
+		}
+	}
+	
+	@Override
+	public void subscribe(LocalizedCache cache)
+	{
+		caches.add(cache);
+	}
+	
+	@Override
+	public void unsubscribe(LocalizedCache cache)
+	{
+		caches.remove(cache);
+	}
+}
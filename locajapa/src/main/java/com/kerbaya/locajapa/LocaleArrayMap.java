@@ -0,0 +1,198 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.io.Serializable;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/*
+ * An immutable locale-value map held in two parallel arrays.  Localizables 
+ * have few locales, so a linear scan is cheaper than hashing; keys are 
+ * compared by identity first, since loaders share their locale instances
+ */
+final class LocaleArrayMap<V> extends AbstractMap<Locale, V> 
+		implements Serializable
+{
+	private static final long serialVersionUID = -2271650183604437812L;
+	
+	/*
+	 * Collects the rows of one map.  A locale added again replaces its value
+	 */
+	static final class Builder<V>
+	{
+		private Locale[] keys = new Locale[4];
+		private Object[] values = new Object[4];
+		private int size;
+		
+		public void put(Locale locale, V value)
+		{
+			for (int i = 0; i < size; i++)
+			{
+				if (keys[i].equals(locale))
+				{
+					values[i] = value;
+					return;
+				}
+			}
+			if (size == keys.length)
+			{
+				keys = Arrays.copyOf(keys, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			keys[size] = locale;
+			values[size++] = value;
+		}
+		
+		public Map<Locale, V> build()
+		{
+			if (size == 0)
+			{
+				return Collections.emptyMap();
+			}
+			return new LocaleArrayMap<>(
+					Arrays.copyOf(keys, size), Arrays.copyOf(values, size));
+		}
+	}
+	
+	public static <V> Map<Locale, V> copyOf(Map<Locale, ? extends V> map)
+	{
+		if (map instanceof LocaleArrayMap || map.isEmpty())
+		{
+			@SuppressWarnings("unchecked")
+			Map<Locale, V> copy = (Map<Locale, V>) (map.isEmpty() ? 
+					Collections.emptyMap() : map);
+			return copy;
+		}
+		Locale[] keys = new Locale[map.size()];
+		Object[] values = new Object[keys.length];
+		int i = 0;
+		for (Map.Entry<Locale, ? extends V> e: map.entrySet())
+		{
+			keys[i] = e.getKey();
+			values[i++] = e.getValue();
+		}
+		return new LocaleArrayMap<>(keys, values);
+	}
+	
+	private final Locale[] keys;
+	private final Object[] values;
+	
+	private LocaleArrayMap(Locale[] keys, Object[] values)
+	{
+		this.keys = keys;
+		this.values = values;
+	}
+	
+	private int indexOf(Object key)
+	{
+		for (int i = 0; i < keys.length; i++)
+		{
+			if (keys[i] == key)
+			{
+				return i;
+			}
+		}
+		if (key != null)
+		{
+			for (int i = 0; i < keys.length; i++)
+			{
+				if (keys[i].equals(key))
+				{
+					return i;
+				}
+			}
+		}
+		return -1;
+	}
+	
+	@Override
+	public int size()
+	{
+		return keys.length;
+	}
+	
+	@Override
+	public boolean containsKey(Object key)
+	{
+		return indexOf(key) >= 0;
+	}
+	
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(Object key)
+	{
+		int i = indexOf(key);
+		return i < 0 ? null : (V) values[i];
+	}
+	
+	@Override
+	public Set<Map.Entry<Locale, V>> entrySet()
+	{
+		return new AbstractSet<Map.Entry<Locale, V>>()
+		{
+			@Override
+			public Iterator<Map.Entry<Locale, V>> iterator()
+			{
+				return new Iterator<Map.Entry<Locale, V>>()
+				{
+					private int next;
+					
+					@Override
+					public boolean hasNext()
+					{
+						return next < keys.length;
+					}
+					
+					@Override
+					@SuppressWarnings("unchecked")
+					public Map.Entry<Locale, V> next()
+					{
+						if (next == keys.length)
+						{
+							throw new NoSuchElementException();
+						}
+						int i = next++;
+						return new SimpleImmutableEntry<>(
+								keys[i], (V) values[i]);
+					}
+					
+					@Override
+					public void remove()
+					{
+						throw new UnsupportedOperationException();
+					}
+				};
+			}
+			
+			@Override
+			public int size()
+			{
+				return keys.length;
+			}
+		};
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.ResourceBundle.Control;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/*
+ * Process-wide tables of one canonical locale per language tag, and of the 
+ * candidate locales of each locale, shared by every loader and resolver.  
+ * Past MAX_SIZE entries, new entries are computed without being registered,
+ * so that unbounded locale input cannot grow the tables
+ */
+final class LocaleRegistry
+{
+	private static final int MAX_SIZE = 10000;
+	
+	private static final Control CONTROL = Control.getControl(
+			Control.FORMAT_DEFAULT);
+	
+	private static final ConcurrentMap<String, Locale> LOCALES = 
+			new ConcurrentHashMap<>();
+	private static final ConcurrentMap<Locale, Candidates> CANDIDATES = 
+			new ConcurrentHashMap<>();
+	
+	private LocaleRegistry() {}
+	
+	/*
+	 * The candidates of a locale, in fallback order: from the most to the 
+	 * least specific.  The rank of a candidate is its position in that order
+	 */
+	static final class Candidates
+	{
+		private final List<Locale> locales;
+		private final Set<String> languageTags;
+		private final String[] rankedLanguageTags;
+		private final int[] rankedCodes;
+		
+		/*
+		 * Computed on first use, since the candidates of the candidates are 
+		 * looked up
+		 */
+		private volatile int[] rankedLanguageLevels;
+		
+		private Candidates(Locale locale)
+		{
+			List<Locale> locales = new ArrayList<>();
+			Set<String> languageTags = new LinkedHashSet<>();
+			for (Locale candidate: CONTROL.getCandidateLocales("", locale))
+			{
+				String languageTag = candidate.toLanguageTag();
+				languageTags.add(languageTag);
+				locales.add(getLocale(languageTag));
+			}
+			this.locales = Collections.unmodifiableList(locales);
+			this.languageTags = Collections.unmodifiableSet(languageTags);
+			rankedLanguageTags = new String[locales.size()];
+			rankedCodes = new int[locales.size()];
+			for (int i = 0; i < rankedCodes.length; i++)
+			{
+				rankedLanguageTags[i] = locales.get(i).toLanguageTag();
+				rankedCodes[i] = LanguageTagDictionary.getCode(
+						rankedLanguageTags[i]);
+			}
+		}
+		
+		/*
+		 * Returns the rank of a language tag and its dictionary code (see 
+		 * LanguageTagDictionary.peekCode), or -1 if it is not a candidate.  
+		 * Tags without a code are compared as strings
+		 */
+		public int getRank(int code, String languageTag)
+		{
+			for (int i = 0; i < rankedCodes.length; i++)
+			{
+				if (rankedCodes[i] == code 
+						&& (code >= 0 
+								|| rankedLanguageTags[i].equals(languageTag)))
+				{
+					return i;
+				}
+			}
+			return -1;
+		}
+		
+		public int getRank(String languageTag)
+		{
+			return getRank(
+					LanguageTagDictionary.peekCode(languageTag), languageTag);
+		}
+		
+		/*
+		 * The canonical candidate locales, as keyed in locale-value maps
+		 */
+		public List<Locale> getLocales()
+		{
+			return locales;
+		}
+		
+		public Set<String> getLanguageTags()
+		{
+			return languageTags;
+		}
+		
+		/*
+		 * The language level of the locale the candidates are of
+		 */
+		public int getLanguageLevel()
+		{
+			return locales.size() - 1;
+		}
+		
+		/*
+		 * The language level of the candidate of a rank, as stored for its 
+		 * locale by LocalizedSupport.  Levels do not decrease with the rank: 
+		 * the candidates of zh-TW are zh-Hant-TW (4), zh-Hant (3), zh-TW (4),
+		 * zh (1) and und (0)
+		 */
+		public int getLanguageLevel(int rank)
+		{
+			int[] languageLevels = rankedLanguageLevels;
+			if (languageLevels == null)
+			{
+				languageLevels = new int[locales.size()];
+				for (int i = 0; i < languageLevels.length; i++)
+				{
+					languageLevels[i] = 
+							getCandidates(locales.get(i)).getLanguageLevel();
+				}
+				rankedLanguageLevels = languageLevels;
+			}
+			return languageLevels[rank];
+		}
+	}
+	
+	public static Locale getLocale(String languageTag)
+	{
+		Locale locale = LOCALES.get(languageTag);
+		if (locale == null)
+		{
+			locale = Locale.forLanguageTag(languageTag);
+			if (LOCALES.size() < MAX_SIZE)
+			{
+				Locale existing = LOCALES.putIfAbsent(languageTag, locale);
+				if (existing != null)
+				{
+					locale = existing;
+				}
+			}
+		}
+		return locale;
+	}
+	
+	public static Candidates getCandidates(Locale locale)
+	{
+		Candidates candidates = CANDIDATES.get(locale);
+		if (candidates == null)
+		{
+			candidates = new Candidates(locale);
+			if (CANDIDATES.size() < MAX_SIZE)
+			{
+				Candidates existing = 
+						CANDIDATES.putIfAbsent(locale, candidates);
+				if (existing != null)
+				{
+					candidates = existing;
+				}
+			}
+		}
+		return candidates;
+	}
+}
@@ -22,11 +22,8 @@ import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
-import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 
-import com.kerbaya.locajapa.LoaderFactory.Builder;
-
 /**
  * Provides localized value and map loading for instances of {@link Localizable}
  * 
@@ -35,24 +32,12 @@ import com.kerbaya.locajapa.LoaderFactory.Builder;
  */
 public class LocalizableLoader
 {
-	private static final LoaderFactory.Builder<Localizable<?>, ?> BUILDER = 
-			LoaderFactory.<Localizable<?>, Object>builder()
-					.setIdProperty("id")
-					.setLanguageLevelProperty("languageLevel")
-					.setLanguageTagProperty("languageTag")
-					.setLocalizedProperty("localized")
-					.setValueProperty("value")
-					.setEntityHandler(LocalizableEntityHandler.INSTANCE)
-					.asReadOnly();
-
-	private final Map<Class<?>, LoaderFactory<?, ?>> factoryMap = 
-			new HashMap<>();
-	
 	private Map<Class<?>, MapLoader<?, ?>> mapLoaderMap;
 	private Map<Class<?>, ValueLoader<?, ?>> valueLoaderMap;
 	
 	private final Locale locale;
-	private final LoaderFactory.Builder<?, ?> builder;
+	private final int maxBatchSize;
+	private final LocalizedCache cache;
 	
 	/**
 	 * Short-hand for:
@@ -71,8 +56,7 @@ public class LocalizableLoader
 	 */
 	public LocalizableLoader(Locale locale)
 	{
-		this.locale = locale;
-		builder = BUILDER.copyAsReadOnly();
+		this(locale, QueryBuilder.DEFAULT_MAX_BATCH_SIZE);
 	}
 	
 	/**
@@ -84,59 +68,57 @@ public class LocalizableLoader
 	 * @param maxBatchSize
 	 * the maximum number of localizable entities that will be included in one
 	 * query
+	 * 
+	 * @throws IllegalArgumentException
+	 * The provided {@code maxBatchSize} was zero or a negative number
 	 */
 	public LocalizableLoader(Locale locale, int maxBatchSize)
 	{
-		this.locale = locale;
-		builder = BUILDER.copy().setMaxBatchSize(maxBatchSize).asReadOnly();
+		this(locale, maxBatchSize, null);
 	}
 	
-	private static Class<?> getEntityType(Class<?> localizableType)
+	/**
+	 * Creates an instance for a specified locale and batch size, which 
+	 * consults and populates a cache shared with other instances
+	 * 
+	 * @param locale
+	 * the locale for which to generate localized values
+	 * 
+	 * @param maxBatchSize
+	 * the maximum number of localizable entities that will be included in one
+	 * query
+	 * 
+	 * @param cache
+	 * the cache to be used, or {@code null} to disable caching
+	 * 
+	 * @throws IllegalArgumentException
+	 * The provided {@code maxBatchSize} was zero or a negative number
+	 */
+	public LocalizableLoader(
+			Locale locale, int maxBatchSize, LocalizedCache cache)
 	{
-		Class<?> entityType = localizableType;
-		Entity anno = null;
-		do
+		if (maxBatchSize < 1)
 		{
-			anno = entityType.getAnnotation(Entity.class);
-			if (anno != null)
-			{
-				break;
-			}
-		} while ((entityType = entityType.getSuperclass()) != null);
-		
-		if (anno == null)
-		{
-			throw new IllegalArgumentException(
-					"@Entity not found on " + localizableType);
+			throw new IllegalArgumentException();
 		}
-		return entityType;
+		this.locale = locale;
+		this.maxBatchSize = maxBatchSize;
+		this.cache = cache;
 	}
 	
-	@SuppressWarnings("unchecked")
 	private <V> LoaderFactory<Localizable<? extends V>, V> getLoaderFactory(
 			Class<?> entityType)
 	{
-		LoaderFactory<Localizable<? extends V>, V> loaderFactory = 
-				(LoaderFactory<Localizable<? extends V>, V>) factoryMap.get(
-						entityType);
-		if (loaderFactory != null)
-		{
-			return loaderFactory;
-		}
-		String entityName = entityType.getAnnotation(Entity.class).name();
-		loaderFactory = ((Builder<Localizable<? extends V>, V>) builder).copy()
-				.setEntityName(entityName.isEmpty() ? 
-						entityType.getSimpleName() : entityName)
-				.build();
-		factoryMap.put(entityType, loaderFactory);
-		return loaderFactory;
+		return LoaderFactoryRegistry.getLoaderFactory(
+				entityType, maxBatchSize, cache);
 	}
 	
 	@SuppressWarnings("unchecked")
 	private <V> MapLoader<Localizable<? extends V>, V> getMapLoader(
 			Class<?> localizableType)
 	{
-		Class<?> entityType = getEntityType(localizableType);
+		Class<?> entityType = LoaderFactoryRegistry.getEntityType(
+				localizableType);
 		MapLoader<Localizable<? extends V>, V> mapLoader;
 		if (mapLoaderMap == null)
 		{
@@ -163,7 +145,8 @@ public class LocalizableLoader
 	private <V> ValueLoader<Localizable<? extends V>, V> getValueLoader(
 			Class<?> localizableType)
 	{
-		Class<?> entityType = getEntityType(localizableType);
+		Class<?> entityType = LoaderFactoryRegistry.getEntityType(
+				localizableType);
 		ValueLoader<Localizable<? extends V>, V> valueLoader;
 		if (valueLoaderMap == null)
 		{
@@ -279,21 +262,40 @@ public class LocalizableLoader
 		return this.<V>getMapLoader(type).getMapById(id);
 	}
 	
+	@SuppressWarnings("unchecked")
+	private static <T, V> void setMapLoader(
+			ValueLoader<?, ?> valueLoader, MapLoader<?, ?> mapLoader)
+	{
+		((ValueLoaderImpl<T, V>) valueLoader).setMapLoader(
+				(MapLoaderImpl<T, V>) mapLoader);
+	}
+	
+	/*
+	 * Maps are loaded first, so that value references of the same entities
+	 * are resolved from them rather than by a separate value query
+	 */
 	public void load(EntityManager em)
 	{
-		if (valueLoaderMap != null)
+		if (mapLoaderMap != null)
 		{
-			for (ValueLoader<?, ?> valueLoader: valueLoaderMap.values())
+			for (MapLoader<?, ?> mapLoader: mapLoaderMap.values())
 			{
-				valueLoader.load(em);
+				mapLoader.load(em);
 			}
 		}
 		
-		if (mapLoaderMap != null)
+		if (valueLoaderMap != null)
 		{
-			for (MapLoader<?, ?> mapLoader: mapLoaderMap.values())
+			for (Map.Entry<Class<?>, ValueLoader<?, ?>> e: 
+					valueLoaderMap.entrySet())
 			{
-				mapLoader.load(em);
+				MapLoader<?, ?> mapLoader = mapLoaderMap == null ? 
+						null : mapLoaderMap.get(e.getKey());
+				if (mapLoader != null)
+				{
+					setMapLoader(e.getValue(), mapLoader);
+				}
+				e.getValue().load(em);
 			}
 		}
 	}
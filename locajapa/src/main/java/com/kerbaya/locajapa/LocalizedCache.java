@@ -0,0 +1,951 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A bounded, thread-safe cache of localized values and locale-value maps 
+ * that can be shared by the loaders of any number of {@link LoaderFactory}
+ * instances, across entity managers.  Value and map loaders that are 
+ * configured with a cache look up their IDs in the cache before querying, 
+ * and add what they query to the cache.</p>
+ * 
+ * <p>Values are keyed by entity type, ID and locale, and maps by entity type 
+ * and ID.  When the cache is full, the least-recently used entries are 
+ * evicted first.  Cached values are shared between threads, so they should be
+ * immutable.</p>
+ * 
+ * <p>When loaders of different threads miss on the same key at the same time,
+ * only the first one queries it; the others wait for its result, which is 
+ * counted by {@link #getMergedFetchCount()}.</p>
+ * 
+ * <p>Entries are invalidated with {@link #invalidate(CacheInvalidation)}, 
+ * either directly or through the {@link InvalidationBus} specified with 
+ * {@link Builder#setInvalidationBus(InvalidationBus)}.</p>
+ * 
+ * <p>Long string values can be held outside of the heap, in a budget 
+ * specified with {@link Builder#setOffHeapBudget(long)}.</p>
+ * 
+ * <p>Create an instance with {@link LocalizedCache#builder()}</p>
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public final class LocalizedCache
+{
+	/**
+	 * Creates instances of {@link LocalizedCache}
+	 * 
+	 * @author Glenn.Lane@kerbaya.com
+	 */
+	public static final class Builder
+	{
+		private int maxSize = INIT_MAX_SIZE;
+		private long timeToLiveNanos = INIT_TIME_TO_LIVE;
+		private InvalidationBus invalidationBus;
+		private long offHeapBudget;
+		
+		private Builder()
+		{
+		}
+		
+		/**
+		 * Specifies the maximum number of entries (values and maps) held by 
+		 * the cache.  Default value is {@value LocalizedCache#DEFAULT_MAX_SIZE}
+		 * 
+		 * @param maxSize
+		 * the maximum number of entries held by the cache
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * this method was already called previously
+		 * 
+		 * @throws IllegalArgumentException
+		 * The provided {@code maxSize} was zero or a negative number
+		 */
+		public Builder setMaxSize(int maxSize)
+		{
+			if (this.maxSize != INIT_MAX_SIZE)
+			{
+				throw new IllegalStateException("already set: maxSize");
+			}
+			if (maxSize < 1)
+			{
+				throw new IllegalArgumentException();
+			}
+			this.maxSize = maxSize;
+			return this;
+		}
+		
+		/**
+		 * Specifies how long an entry stays in the cache after it was added.
+		 * By default, entries are only removed by eviction
+		 * 
+		 * @param duration
+		 * the time-to-live, in {@code unit}
+		 * 
+		 * @param unit
+		 * the unit of {@code duration}
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * this method was already called previously
+		 * 
+		 * @throws IllegalArgumentException
+		 * The provided {@code duration} was zero or a negative number
+		 */
+		public Builder setTimeToLive(long duration, TimeUnit unit)
+		{
+			if (timeToLiveNanos != INIT_TIME_TO_LIVE)
+			{
+				throw new IllegalStateException("already set: timeToLive");
+			}
+			if (duration < 1)
+			{
+				throw new IllegalArgumentException();
+			}
+			timeToLiveNanos = unit.toNanos(duration);
+			return this;
+		}
+		
+		/**
+		 * Specifies a bus to which the cache subscribes when it is built, so 
+		 * that invalidations published on the bus are applied to the cache.
+		 * By default, the cache is only invalidated directly
+		 * 
+		 * @param invalidationBus
+		 * the bus to subscribe to
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * this method was already called previously
+		 */
+		public Builder setInvalidationBus(InvalidationBus invalidationBus)
+		{
+			if (this.invalidationBus != null)
+			{
+				throw new IllegalStateException("already set: invalidationBus");
+			}
+			this.invalidationBus = Objects.requireNonNull(invalidationBus);
+			return this;
+		}
+		
+		/**
+		 * Specifies the number of bytes of direct memory in which the cache
+		 * holds the UTF-8 bytes of string values (including the values of 
+		 * cached maps) of at least {@value LocalizedCache#OFF_HEAP_MIN_LENGTH}
+		 * characters, instead of holding the strings on the heap.  Strings are
+		 * decoded again when a loader reads them from the cache.  When the 
+		 * budget is used up, the oldest strings are evicted.  By default, all
+		 * values are held on the heap
+		 * 
+		 * @param maxBytes
+		 * the number of bytes of direct memory
+		 * 
+		 * @return
+		 * this instance
+		 * 
+		 * @throws IllegalStateException
+		 * this method was already called previously
+		 * 
+		 * @throws IllegalArgumentException
+		 * The provided {@code maxBytes} was zero or a negative number
+		 */
+		public Builder setOffHeapBudget(long maxBytes)
+		{
+			if (offHeapBudget != 0)
+			{
+				throw new IllegalStateException("already set: offHeapBudget");
+			}
+			if (maxBytes < 1)
+			{
+				throw new IllegalArgumentException();
+			}
+			offHeapBudget = maxBytes;
+			return this;
+		}
+		
+		/**
+		 * Creates the {@link LocalizedCache} instance
+		 * 
+		 * @return
+		 * the {@link LocalizedCache} instance
+		 */
+		public LocalizedCache build()
+		{
+			LocalizedCache cache = new LocalizedCache(
+					maxSize == INIT_MAX_SIZE ? DEFAULT_MAX_SIZE : maxSize, 
+					timeToLiveNanos,
+					offHeapBudget == 0 ? null : new OffHeapStore(
+							offHeapBudget, OFF_HEAP_MIN_LENGTH));
+			if (invalidationBus != null)
+			{
+				invalidationBus.subscribe(cache);
+			}
+			return cache;
+		}
+	}
+	
+	/**
+	 * Creates a new instance of {@link Builder}
+	 * 
+	 * @return
+	 * a new instance of {@link Builder}
+	 */
+	public static Builder builder()
+	{
+		return new Builder();
+	}
+	
+	/**
+	 * The default maximum number of cache entries
+	 */
+	public static final int DEFAULT_MAX_SIZE = 10000;
+	
+	/**
+	 * The minimum length of the strings held outside of the heap
+	 */
+	public static final int OFF_HEAP_MIN_LENGTH = 64;
+	
+	private static final int INIT_MAX_SIZE = -1;
+	private static final long INIT_TIME_TO_LIVE = -1;
+	private static final int MAX_SEGMENT_COUNT = 16;
+	
+	/*
+	 * Stands in for cached null values, so that they can be told apart from
+	 * cache misses
+	 */
+	private static final Object NULL = new Object();
+	
+	/*
+	 * selection distinguishes factories that select different values from the
+	 * same entity.  locale is null for maps.  All of the keys of an ID share
+	 * a segment
+	 */
+	private static final class Key
+	{
+		private final String entityName;
+		private final Object selection;
+		private final Object id;
+		private final Locale locale;
+		
+		public Key(
+				String entityName, Object selection, Object id, Locale locale)
+		{
+			this.entityName = entityName;
+			this.selection = selection;
+			this.id = id;
+			this.locale = locale;
+		}
+		
+		public Key getMapKey()
+		{
+			return locale == null ? 
+					this : new Key(entityName, selection, id, null);
+		}
+		
+		public int getIdHashCode()
+		{
+			return (entityName.hashCode() * 31 + selection.hashCode()) * 31 
+					+ id.hashCode();
+		}
+		
+		@Override
+		public int hashCode()
+		{
+			return getIdHashCode() * 31 + Objects.hashCode(locale);
+		}
+		
+		@Override
+		public boolean equals(Object obj)
+		{
+			if (this == obj)
+			{
+				return true;
+			}
+			if (!(obj instanceof Key))
+			{
+				return false;
+			}
+			Key other = (Key) obj;
+			return entityName.equals(other.entityName) 
+					&& selection.equals(other.selection)
+					&& id.equals(other.id)
+					&& Objects.equals(locale, other.locale);
+		}
+	}
+	
+	/*
+	 * A cached map with some values held by the off-heap store
+	 */
+	private static final class OffHeapMap
+	{
+		private final Map<Locale, Object> map;
+		
+		public OffHeapMap(Map<Locale, Object> map)
+		{
+			this.map = map;
+		}
+	}
+	
+	private static final class CacheEntry
+	{
+		private final Object value;
+		private final long addedNanos;
+		
+		public CacheEntry(Object value, long addedNanos)
+		{
+			this.value = value;
+			this.addedNanos = addedNanos;
+		}
+	}
+	
+	/*
+	 * The fetch of a missing key by one loader.  The owner must either 
+	 * complete or abandon its flight; other loaders get a flight that follows
+	 * the owner's, and await it
+	 */
+	final class Flight
+	{
+		private final Key key;
+		private final Flight leader;
+		private final CountDownLatch latch;
+		private final long invalidationCount;
+		private Object value;
+		
+		private Flight(Key key, Flight leader, long invalidationCount)
+		{
+			this.key = key;
+			this.leader = leader;
+			latch = leader == null ? new CountDownLatch(1) : null;
+			this.invalidationCount = invalidationCount;
+		}
+		
+		public boolean isOwner()
+		{
+			return leader == null;
+		}
+		
+		private void finish(Object value)
+		{
+			this.value = value;
+			flights.remove(key, this);
+			latch.countDown();
+		}
+		
+		public void complete(Object value)
+		{
+			assert leader == null;
+			Object masked = value == null ? NULL : value;
+			
+			/*
+			 * A value fetched across an invalidation may be stale: it is 
+			 * handed to the waiting loaders, but not cached
+			 */
+			put(key, masked, invalidationCount);
+			finish(masked);
+		}
+		
+		/*
+		 * Wakes up waiting loaders, which then fetch the key themselves
+		 */
+		public void abandon()
+		{
+			assert leader == null;
+			if (latch.getCount() != 0)
+			{
+				finish(null);
+			}
+		}
+		
+		/*
+		 * Returns null if the owner abandoned the flight or the thread was 
+		 * interrupted (the interrupt status is kept), or a masked value
+		 */
+		public Object await()
+		{
+			assert leader != null;
+			try
+			{
+				leader.latch.await();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				return null;
+			}
+			Object masked = leader.value;
+			if (masked != null)
+			{
+				mergedFetchCount.incrementAndGet();
+			}
+			return masked;
+		}
+	}
+	
+	/*
+	 * An access-ordered map, guarded by its own monitor.  The value keys of 
+	 * each ID are indexed by its map key, so that patches do not scan the 
+	 * segment
+	 */
+	private final class Segment extends LinkedHashMap<Key, CacheEntry>
+	{
+		private static final long serialVersionUID = 5094452066958807407L;
+		
+		private final int maxSize;
+		private final Map<Key, Set<Key>> valueKeys = new HashMap<>();
+		
+		public Segment(int maxSize)
+		{
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+		
+		private void unindex(Key key)
+		{
+			if (key.locale == null)
+			{
+				return;
+			}
+			Key mapKey = key.getMapKey();
+			Set<Key> keys = valueKeys.get(mapKey);
+			if (keys != null && keys.remove(key) && keys.isEmpty())
+			{
+				valueKeys.remove(mapKey);
+			}
+		}
+		
+		@Override
+		public CacheEntry put(Key key, CacheEntry entry)
+		{
+			CacheEntry previous = super.put(key, entry);
+			if (previous == null && key.locale != null)
+			{
+				Key mapKey = key.getMapKey();
+				Set<Key> keys = valueKeys.get(mapKey);
+				if (keys == null)
+				{
+					keys = new HashSet<>();
+					valueKeys.put(mapKey, keys);
+				}
+				keys.add(key);
+			}
+			return previous;
+		}
+		
+		@Override
+		public CacheEntry remove(Object key)
+		{
+			CacheEntry removed = super.remove(key);
+			if (removed != null)
+			{
+				unindex((Key) key);
+			}
+			return removed;
+		}
+		
+		@Override
+		public void clear()
+		{
+			super.clear();
+			valueKeys.clear();
+		}
+		
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, CacheEntry> eldest)
+		{
+			if (size() > maxSize)
+			{
+				unindex(eldest.getKey());
+				evictionCount.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+		
+		public void invalidate(CacheInvalidation invalidation)
+		{
+			for (Iterator<Key> it = keySet().iterator(); it.hasNext();)
+			{
+				Key key = it.next();
+				if (invalidation.matches(key.entityName, key.id, key.locale))
+				{
+					it.remove();
+					unindex(key);
+				}
+			}
+		}
+		
+		public List<Key> getValueKeys(Key mapKey)
+		{
+			Set<Key> keys = valueKeys.get(mapKey);
+			return keys == null ? 
+					Collections.<Key>emptyList() : new ArrayList<>(keys);
+		}
+	}
+	
+	private final int maxSize;
+	private final long timeToLiveNanos;
+	private final OffHeapStore offHeapStore;
+	private final Segment[] segments;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+	private final AtomicLong mergedFetchCount = new AtomicLong();
+	private final AtomicLong invalidationCount = new AtomicLong();
+	private final ConcurrentMap<Key, Flight> flights = 
+			new ConcurrentHashMap<>();
+	
+	private LocalizedCache(
+			int maxSize, long timeToLiveNanos, OffHeapStore offHeapStore)
+	{
+		this.maxSize = maxSize;
+		this.timeToLiveNanos = timeToLiveNanos;
+		this.offHeapStore = offHeapStore;
+		int segmentCount = Math.min(MAX_SEGMENT_COUNT, maxSize);
+		int segmentMaxSize = (maxSize + segmentCount - 1) / segmentCount;
+		segments = new LocalizedCache.Segment[segmentCount];
+		for (int i = 0; i < segmentCount; i++)
+		{
+			segments[i] = new Segment(segmentMaxSize);
+		}
+	}
+	
+	private Segment getSegment(Key key)
+	{
+		int h = key.getIdHashCode();
+		h ^= h >>> 16;
+		return segments[(h & Integer.MAX_VALUE) % segments.length];
+	}
+	
+	private boolean isExpired(CacheEntry entry, long now)
+	{
+		return timeToLiveNanos != INIT_TIME_TO_LIVE 
+				&& now - entry.addedNanos >= timeToLiveNanos;
+	}
+	
+	/*
+	 * Moves long strings of a masked value to the off-heap store
+	 */
+	private Object store(Object masked)
+	{
+		if (offHeapStore == null)
+		{
+			return masked;
+		}
+		if (!(masked instanceof Map))
+		{
+			return offHeapStore.encode(masked);
+		}
+		@SuppressWarnings("unchecked")
+		Map<Locale, Object> map = (Map<Locale, Object>) masked;
+		Map<Locale, Object> stored = new HashMap<>(map);
+		boolean offHeap = false;
+		for (Map.Entry<Locale, Object> e: stored.entrySet())
+		{
+			Object value = offHeapStore.encode(e.getValue());
+			if (value != e.getValue())
+			{
+				e.setValue(value);
+				offHeap = true;
+			}
+		}
+		return offHeap ? new OffHeapMap(stored) : masked;
+	}
+	
+	/*
+	 * Returns the masked value of a stored value, or null if some of its 
+	 * strings were evicted from the off-heap store
+	 */
+	private Object load(Object stored)
+	{
+		if (stored instanceof OffHeapStore.Handle)
+		{
+			return offHeapStore.decode((OffHeapStore.Handle) stored);
+		}
+		if (!(stored instanceof OffHeapMap))
+		{
+			return stored;
+		}
+		Map<Locale, Object> map = new HashMap<>(((OffHeapMap) stored).map);
+		for (Map.Entry<Locale, Object> e: map.entrySet())
+		{
+			if (e.getValue() instanceof OffHeapStore.Handle)
+			{
+				String value = offHeapStore.decode(
+						(OffHeapStore.Handle) e.getValue());
+				if (value == null)
+				{
+					return null;
+				}
+				e.setValue(value);
+			}
+		}
+		return Collections.unmodifiableMap(map);
+	}
+	
+	/*
+	 * Returns null on a miss, or a masked value (see unmask)
+	 */
+	Object get(String entityName, Object selection, Object id, Locale locale)
+	{
+		Key key = new Key(entityName, selection, id, locale);
+		Segment segment = getSegment(key);
+		CacheEntry entry;
+		synchronized (segment)
+		{
+			entry = segment.get(key);
+			if (entry != null && isExpired(entry, System.nanoTime()))
+			{
+				segment.remove(key);
+				evictionCount.incrementAndGet();
+				entry = null;
+			}
+		}
+		Object masked = entry == null ? null : load(entry.value);
+		if (masked == null)
+		{
+			if (entry != null)
+			{
+				synchronized (segment)
+				{
+					if (segment.get(key) == entry)
+					{
+						segment.remove(key);
+					}
+				}
+				evictionCount.incrementAndGet();
+			}
+			missCount.incrementAndGet();
+			return null;
+		}
+		hitCount.incrementAndGet();
+		return masked;
+	}
+	
+	/*
+	 * Skipped if the cache was invalidated since invalidationCount was read, 
+	 * since the value may have been fetched before the invalidation
+	 */
+	void put(
+			String entityName, 
+			Object selection, 
+			Object id, 
+			Locale locale, 
+			Object value,
+			long invalidationCount)
+	{
+		put(new Key(entityName, selection, id, locale), 
+				value == null ? NULL : value, 
+				invalidationCount);
+	}
+	
+	private void put(Key key, Object masked, long invalidationCount)
+	{
+		CacheEntry entry = new CacheEntry(store(masked), System.nanoTime());
+		Segment segment = getSegment(key);
+		synchronized (segment)
+		{
+			if (this.invalidationCount.get() == invalidationCount)
+			{
+				segment.put(key, entry);
+			}
+		}
+	}
+	
+	/*
+	 * Returns the unexpired masked value of a key without counting a hit or 
+	 * a miss, or null
+	 */
+	private Object peek(Key key)
+	{
+		Segment segment = getSegment(key);
+		CacheEntry entry;
+		synchronized (segment)
+		{
+			entry = segment.get(key);
+		}
+		return entry == null || isExpired(entry, System.nanoTime()) ? 
+				null : load(entry.value);
+	}
+	
+	/*
+	 * Called after a miss: returns a flight owned by the caller, or the flight
+	 * of the loader already fetching the key
+	 */
+	Flight claim(
+			String entityName, Object selection, Object id, Locale locale)
+	{
+		return claim(
+				entityName, selection, id, locale, invalidationCount.get());
+	}
+	
+	/*
+	 * The owned flight does not cache its value if the cache was invalidated
+	 * since invalidationCount was read
+	 */
+	Flight claim(
+			String entityName, 
+			Object selection, 
+			Object id, 
+			Locale locale, 
+			long invalidationCount)
+	{
+		Key key = new Key(entityName, selection, id, locale);
+		Flight flight = new Flight(key, null, invalidationCount);
+		Flight existing = flights.putIfAbsent(key, flight);
+		if (existing != null)
+		{
+			return new Flight(key, existing, invalidationCount);
+		}
+		
+		/*
+		 * Another flight may have completed between the miss and the claim
+		 */
+		Object masked = peek(key);
+		if (masked != null)
+		{
+			flight.finish(masked);
+			return new Flight(key, flight, invalidationCount);
+		}
+		return flight;
+	}
+	
+	@SuppressWarnings("unchecked")
+	static <V> V unmask(Object cached)
+	{
+		return cached == NULL ? null : (V) cached;
+	}
+	
+	/**
+	 * @return
+	 * the maximum number of entries held by this cache
+	 */
+	public int getMaxSize()
+	{
+		return maxSize;
+	}
+	
+	/**
+	 * @return
+	 * the number of entries currently held by this cache, including entries
+	 * that have expired but were not removed yet
+	 */
+	public int size()
+	{
+		int size = 0;
+		for (Segment segment: segments)
+		{
+			synchronized (segment)
+			{
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+	
+	/**
+	 * Removes the entries described by an invalidation from this cache.  
+	 * Values being fetched while the invalidation is applied are not cached
+	 * 
+	 * @param invalidation
+	 * the entries to remove
+	 */
+	public void invalidate(CacheInvalidation invalidation)
+	{
+		invalidationCount.incrementAndGet();
+		for (Segment segment: segments)
+		{
+			synchronized (segment)
+			{
+				segment.invalidate(invalidation);
+			}
+		}
+	}
+	
+	/*
+	 * Applies the changed localized rows of an ID to its cached map, and to 
+	 * the cached values of the locales that resolve through any of the 
+	 * changed locales.  Without a cached map, the values are removed instead,
+	 * since they cannot be resolved again without the other rows of the ID
+	 */
+	void patch(
+			String entityName, 
+			Object selection, 
+			Object id, 
+			Map<Locale, ?> changes)
+	{
+		invalidationCount.addAndGet(changes.size());
+		Key mapKey = new Key(entityName, selection, id, null);
+		Segment segment = getSegment(mapKey);
+		long now = System.nanoTime();
+		synchronized (segment)
+		{
+			CacheEntry mapEntry = segment.get(mapKey);
+			Object masked = mapEntry == null || isExpired(mapEntry, now) ? 
+					null : load(mapEntry.value);
+			Map<Locale, Object> map = null;
+			if (masked != null)
+			{
+				@SuppressWarnings("unchecked")
+				Map<Locale, Object> cachedMap = (Map<Locale, Object>) masked;
+				map = new HashMap<>(cachedMap);
+				map.putAll(changes);
+				map = Collections.unmodifiableMap(map);
+				segment.put(mapKey, new CacheEntry(store(map), now));
+			}
+			for (Key key: segment.getValueKeys(mapKey))
+			{
+				LocaleRegistry.Candidates candidates = 
+						LocaleRegistry.getCandidates(key.locale);
+				if (!isAffected(candidates.getLocales(), changes))
+				{
+					continue;
+				}
+				if (map == null)
+				{
+					segment.remove(key);
+					continue;
+				}
+				Object resolved = Utils.resolve(map, candidates);
+				segment.put(key, new CacheEntry(
+						store(resolved == null ? NULL : resolved), now));
+			}
+		}
+	}
+	
+	private static boolean isAffected(
+			List<Locale> candidateLocales, Map<Locale, ?> changes)
+	{
+		for (Locale candidateLocale: candidateLocales)
+		{
+			if (changes.containsKey(candidateLocale))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * @return
+	 * the number of bytes of direct memory allocated so far for the values 
+	 * held outside of the heap, which does not exceed the budget specified 
+	 * with {@link Builder#setOffHeapBudget(long)}
+	 */
+	public long getOffHeapSize()
+	{
+		return offHeapStore == null ? 0 : offHeapStore.getAllocatedBytes();
+	}
+	
+	/**
+	 * @return
+	 * the number of invalidations and refreshed rows applied to this cache
+	 */
+	public long getInvalidationCount()
+	{
+		return invalidationCount.get();
+	}
+	
+	/**
+	 * Removes all entries from this cache
+	 */
+	public void clear()
+	{
+		for (Segment segment: segments)
+		{
+			synchronized (segment)
+			{
+				segment.clear();
+			}
+		}
+	}
+	
+	/**
+	 * @return
+	 * the number of lookups that found an entry
+	 */
+	public long getHitCount()
+	{
+		return hitCount.get();
+	}
+	
+	/**
+	 * @return
+	 * the number of lookups that did not find an entry
+	 */
+	public long getMissCount()
+	{
+		return missCount.get();
+	}
+	
+	/**
+	 * @return
+	 * the number of lookups that missed while another loader was already 
+	 * fetching the same key, and were served by that loader's query instead
+	 * of a query of their own
+	 */
+	public long getMergedFetchCount()
+	{
+		return mergedFetchCount.get();
+	}
+	
+	/**
+	 * @return
+	 * the number of entries removed because the cache was full or because 
+	 * they expired
+	 */
+	public long getEvictionCount()
+	{
+		return evictionCount.get();
+	}
+	
+	@Override
+	public String toString()
+	{
+		return "LocalizedCache[size=" + size() 
+				+ ", hits=" + hitCount 
+				+ ", misses=" + missCount 
+				+ ", evictions=" + evictionCount 
+				+ ", merged=" + mergedFetchCount 
+				+ ", invalidations=" + invalidationCount 
+				+ "]";
+	}
+}
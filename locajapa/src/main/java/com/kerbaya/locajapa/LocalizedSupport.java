@@ -53,7 +53,8 @@ public class LocalizedSupport
 	{
 		this.locale = new Locale.Builder().setLocale(locale).build();
 		languageTag = this.locale.toLanguageTag();
-		languageLevel = Utils.getCandidateLocales(this.locale).size() - 1;
+		languageLevel = 
+				LocaleRegistry.getCandidates(this.locale).getLanguageLevel();
 	}
 	
 	/**
@@ -19,7 +19,6 @@
 package com.kerbaya.locajapa;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Locale;
 import java.util.Map;
 
@@ -31,6 +30,7 @@ final class MapLoaderEntry<V> extends ForwardingMap<Locale, V>
 
 	private Resolver<Map<Locale, V>> preLoadResolver;
 	private Map<Locale, V> map;
+	private transient LocaleArrayMap.Builder<V> batch;
 	
 	public MapLoaderEntry(Resolver<Map<Locale, V>> preLoadResolver)
 	{
@@ -63,24 +63,35 @@ final class MapLoaderEntry<V> extends ForwardingMap<Locale, V>
 	public void addFromBatch(Locale locale, V value)
 	{
 		assert preLoadResolver != null;
-		if (map == null)
+		if (batch == null)
 		{
-			map = new HashMap<>();
+			batch = new LocaleArrayMap.Builder<>();
 		}
-		map.put(locale, value);
+		batch.put(locale, value);
 	}
 	
 	public void finalizeBatch()
 	{
 		assert preLoadResolver != null;
-		if (map == null)
+		if (batch == null)
 		{
 			map = Collections.emptyMap();
 		}
 		else
 		{
-			map = Collections.unmodifiableMap(map);
+			map = batch.build();
+			batch = null;
 		}
 		preLoadResolver = null;
 	}
+	
+	/*
+	 * map must be unmodifiable
+	 */
+	public void setFromCache(Map<Locale, V> map)
+	{
+		assert preLoadResolver != null;
+		this.map = map;
+		preLoadResolver = null;
+	}
 }
@@ -18,11 +18,11 @@
  */
 package com.kerbaya.locajapa;
 
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
 import javax.persistence.Query;
@@ -31,17 +31,31 @@ import com.kerbaya.locajapa.QueryBuilder.MapQueryBuilder;
 
 final class MapLoaderImpl<T, V> implements MapLoader<T, V>
 {
-	private final Map<Object, MapLoaderEntry<V>> idMap = new HashMap<>();
+	private final Map<Object, MapLoaderEntry<V>> idMap = new IdMap<>();
 	
 	private final EntityHandler<? super T, ?, ? extends V> entityHandler;
 	private final MapQueryBuilder<V> mqb;
+	private final Set<String> languageTags;
+	private final LoaderCache cache;
+	private final CatalogSnapshot<V> snapshot;
 	
+	/*
+	 * A null languageTags loads every language tag, otherwise mqb must be 
+	 * language-tag filtered.  Filtered maps must not be cached
+	 */
 	public MapLoaderImpl(
 			EntityHandler<? super T, ?, ? extends V> entityHandler,
-			MapQueryBuilder<V> mqb)
+			MapQueryBuilder<V> mqb,
+			Set<String> languageTags,
+			LoaderCache cache,
+			CatalogSnapshot<V> snapshot)
 	{
+		assert languageTags == null || cache == null;
 		this.entityHandler = entityHandler;
 		this.mqb = mqb == null ? null : mqb.copyAsReadOnly();
+		this.languageTags = languageTags;
+		this.cache = cache;
+		this.snapshot = snapshot;
 	}
 
 	@Override
@@ -72,18 +86,57 @@ final class MapLoaderImpl<T, V> implements MapLoader<T, V>
 		return getMap(id, null);
 	}
 	
+	public MapQueryBuilder<V> getMapQueryBuilder()
+	{
+		return mqb;
+	}
+	
+	/*
+	 * Returns null if the ID was never registered
+	 */
+	public MapLoaderEntry<V> getEntry(Object id)
+	{
+		return idMap.get(id);
+	}
+	
+	private Map<Locale, V> getFiltered(Map<Locale, V> map)
+	{
+		if (languageTags == null)
+		{
+			return map;
+		}
+		LocaleArrayMap.Builder<V> r = new LocaleArrayMap.Builder<>();
+		for (Entry<Locale, V> e: map.entrySet())
+		{
+			if (languageTags.contains(e.getKey().toLanguageTag()))
+			{
+				r.put(e.getKey(), e.getValue());
+			}
+		}
+		return r.build();
+	}
+	
 	private Map<Locale, V> getMap(Object id, T localizable)
 	{
 		MapLoaderEntry<V> entry = idMap.get(id);
 		if (entry != null)
 		{
-			return entry;
+			/*
+			 * Loaded maps are returned without forwarding
+			 */
+			return entry.isLoaded() ? entry.delegate() : entry;
 		}
 		entry = new MapLoaderEntry<V>(
 				localizable == null || entityHandler == null ?
 						NonResolvable.<Map<Locale, V>>instance() 
-						: new MapResolver<>(entityHandler, localizable));
+						: new MapResolver<>(
+								entityHandler, localizable, languageTags));
 		idMap.put(id, entry);
+		if (snapshot != null && snapshot.contains(id))
+		{
+			entry.setFromCache(getFiltered(snapshot.getMap(id)));
+			return entry.delegate();
+		}
 		return entry;
 	}
 
@@ -94,14 +147,100 @@ final class MapLoaderImpl<T, V> implements MapLoader<T, V>
 		{
 			throw new UnsupportedOperationException();
 		}
-		Map<Object, MapLoaderEntry<V>> batch = new HashMap<>();
+		if (languageTags != null && !mqb.isMatchable(languageTags))
+		{
+			for (MapLoaderEntry<V> entry: idMap.values())
+			{
+				if (!entry.isLoaded())
+				{
+					entry.finalizeBatch();
+				}
+			}
+			return;
+		}
+		if (cache == null)
+		{
+			loadFromQueries(em, null, null, 0);
+			return;
+		}
+		
+		/*
+		 * IDs already being fetched by other loaders are awaited after this 
+		 * loader's own queries, so that two loaders never wait on each other.
+		 * Maps fetched across an invalidation are not cached
+		 */
+		long invalidationCount = cache.getInvalidationCount();
+		Map<Object, LocalizedCache.Flight> owned = new IdMap<>();
+		Map<Object, LocalizedCache.Flight> followed = new IdMap<>();
+		for (Entry<Object, MapLoaderEntry<V>> mapEntry: idMap.entrySet())
+		{
+			MapLoaderEntry<V> entry = mapEntry.getValue();
+			if (entry.isLoaded())
+			{
+				continue;
+			}
+			Map<Locale, V> cached = cache.getMap(mapEntry.getKey());
+			if (cached != null)
+			{
+				entry.setFromCache(cached);
+				continue;
+			}
+			LocalizedCache.Flight flight = cache.claimMap(
+					mapEntry.getKey(), invalidationCount);
+			(flight.isOwner() ? owned : followed).put(
+					mapEntry.getKey(), flight);
+		}
+		try
+		{
+			loadFromQueries(em, owned, followed.keySet(), invalidationCount);
+		}
+		finally
+		{
+			for (LocalizedCache.Flight flight: owned.values())
+			{
+				flight.abandon();
+			}
+		}
+		boolean abandoned = false;
+		for (Entry<Object, LocalizedCache.Flight> e: followed.entrySet())
+		{
+			Object masked = e.getValue().await();
+			if (masked == null)
+			{
+				abandoned = true;
+			}
+			else
+			{
+				idMap.get(e.getKey()).setFromCache(
+						LocalizedCache.<Map<Locale, V>>unmask(masked));
+			}
+		}
+		if (abandoned)
+		{
+			loadFromQueries(em, null, null, invalidationCount);
+		}
+	}
+	
+	/*
+	 * owned flights are completed as their IDs are queried, and skipped IDs 
+	 * are left unloaded.  The other queried IDs are cached unless the cache 
+	 * was invalidated since invalidationCount was read
+	 */
+	private void loadFromQueries(
+			EntityManager em, 
+			Map<Object, LocalizedCache.Flight> owned,
+			Set<Object> skipped,
+			long invalidationCount)
+	{
+		Map<Object, MapLoaderEntry<V>> batch = new IdMap<>();
 		
 		int maxBatchSize = mqb.getMaxBatchSize();
 		Query maxBatchQuery = null;
 		for (Entry<Object, MapLoaderEntry<V>> mapEntry: idMap.entrySet())
 		{
 			MapLoaderEntry<V> entry = mapEntry.getValue();
-			if (entry.isLoaded())
+			if (entry.isLoaded() 
+					|| (skipped != null && skipped.contains(mapEntry.getKey())))
 			{
 				continue;
 			}
@@ -112,45 +251,82 @@ final class MapLoaderImpl<T, V> implements MapLoader<T, V>
 				{
 					maxBatchQuery = createQuery(em, maxBatchSize);
 				}
-				flushBatch(maxBatchQuery, batch);
+				flushBatch(
+						maxBatchQuery, 
+						batch, 
+						maxBatchSize, 
+						owned, 
+						invalidationCount);
 			}
 		}
 		
 		if (!batch.isEmpty())
 		{
-			flushBatch(createQuery(em, batch.size()), batch);
+			int querySize = mqb.getQueryBatchSize(batch.size());
+			flushBatch(
+					querySize == maxBatchSize && maxBatchQuery != null ? 
+							maxBatchQuery : createQuery(em, querySize), 
+					batch, 
+					querySize,
+					owned,
+					invalidationCount);
 		}
 	}
 	
 	private Query createQuery(EntityManager em, int idBatchSize)
 	{
+		if (languageTags == null)
+		{
+			return em.createQuery(mqb.getQueryText(idBatchSize));
+		}
 		Query q = em.createQuery(
-				mqb.copy().addIdParams(idBatchSize).createQueryText());
+				mqb.getQueryText(idBatchSize, languageTags.size()));
+		mqb.setLanguageTagParams(q, languageTags);
 		return q;
 	}
 	
 	@SuppressWarnings("unchecked")
 	private void flushBatch(
 			Query q, 
-			Map<Object, MapLoaderEntry<V>> batch)
+			Map<Object, MapLoaderEntry<V>> batch,
+			int paramCount,
+			Map<Object, LocalizedCache.Flight> owned,
+			long invalidationCount)
 	{
-		MapQueryBuilder.setIdParams(q, batch.keySet());
+		MapQueryBuilder.setIdParams(q, batch.keySet(), paramCount);
 		for (Object[] row: (List<Object[]>) q.getResultList())
 		{
 			MapLoaderEntry<V> entry = batch.get(
 					MapQueryBuilder.getLocalizableId(row));
-			String languageTag = MapQueryBuilder.getLanguageTag(row);
+			String languageTag = mqb.getLanguageTag(row);
 			if (languageTag != null)
 			{
 				entry.addFromBatch(
-						Locale.forLanguageTag(languageTag), 
+						LocaleRegistry.getLocale(languageTag), 
 						mqb.getValue(row));
 			}
 		}
 		
-		for (MapLoaderEntry<V> batchEntry: batch.values())
+		for (Entry<Object, MapLoaderEntry<V>> batchEntry: batch.entrySet())
 		{
-			batchEntry.finalizeBatch();
+			batchEntry.getValue().finalizeBatch();
+			if (cache == null)
+			{
+				continue;
+			}
+			LocalizedCache.Flight flight = 
+					owned == null ? null : owned.remove(batchEntry.getKey());
+			if (flight == null)
+			{
+				cache.putMap(
+						batchEntry.getKey(), 
+						batchEntry.getValue().delegate(), 
+						invalidationCount);
+			}
+			else
+			{
+				flight.complete(batchEntry.getValue().delegate());
+			}
 		}
 		
 		batch.clear();
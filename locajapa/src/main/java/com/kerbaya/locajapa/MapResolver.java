@@ -19,10 +19,10 @@
 package com.kerbaya.locajapa;
 
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 final class MapResolver<T, V> implements Resolver<Map<Locale, V>>
 {
@@ -30,41 +30,68 @@ final class MapResolver<T, V> implements Resolver<Map<Locale, V>>
 
 	private final EntityHandler<? super T, ?, ? extends V> entityHandler;
 	private final T localizable;
+	private final Set<String> languageTags;
 	
 	public MapResolver(
 			EntityHandler<? super T, ?, ? extends V> entityHandler,
 			T localizable)
+	{
+		this(entityHandler, localizable, null);
+	}
+	
+	/*
+	 * A null languageTags includes every language tag
+	 */
+	public MapResolver(
+			EntityHandler<? super T, ?, ? extends V> entityHandler,
+			T localizable,
+			Set<String> languageTags)
 	{
 		this.entityHandler = entityHandler;
 		this.localizable = localizable;
+		this.languageTags = languageTags;
 	}
 	
 	@Override
 	public Map<Locale, V> get()
 	{
-		Iterator<Localized<V>> iter = 
-				LocalizedIterator.create(entityHandler, localizable);
-		if (iter == null || !iter.hasNext())
+		return get(entityHandler, localizable, languageTags);
+	}
+	
+	/*
+	 * The entity handler is called on the localized instances themselves, so
+	 * that no object is created per localized instance other than the map 
+	 * keys
+	 */
+	private static <T, L, V> Map<Locale, V> get(
+			EntityHandler<? super T, L, ? extends V> entityHandler,
+			T localizable,
+			Set<String> languageTags)
+	{
+		Iterable<? extends L> localizedInstances = 
+				entityHandler.getLocalized(localizable);
+		if (localizedInstances == null)
 		{
 			return Collections.emptyMap();
 		}
-		Localized<V> localized = iter.next();
-		Locale key = Locale.forLanguageTag(localized.getLanguageTag());
-		V value = localized.getValue();
+		Iterator<? extends L> iter = localizedInstances.iterator();
 		if (!iter.hasNext())
 		{
-			return Collections.singletonMap(key, value);
+			return Collections.emptyMap();
 		}
-		Map<Locale, V> r = new HashMap<>();
-		r.put(key, value);
+		LocaleArrayMap.Builder<V> r = new LocaleArrayMap.Builder<>();
 		do
 		{
-			localized = iter.next();
-			r.put(
-					Locale.forLanguageTag(localized.getLanguageTag()),
-					localized.getValue());
+			L localized = iter.next();
+			String languageTag = entityHandler.getLanguageTag(localized);
+			if (languageTags == null || languageTags.contains(languageTag))
+			{
+				r.put(
+						LocaleRegistry.getLocale(languageTag), 
+						entityHandler.getValue(localized));
+			}
 		} while (iter.hasNext());
-		return Collections.unmodifiableMap(r);
+		return r.build();
 	}
 
 }
@@ -73,7 +73,7 @@ public abstract class MappedLocalized<T> implements Localized<T>, Serializable
 		String languageTag = getLanguageTag();
 		if (locale == null && languageTag != null)
 		{
-			locale = Locale.forLanguageTag(languageTag);
+			locale = LocaleRegistry.getLocale(languageTag);
 		}
 		return locale;
 	}
@@ -0,0 +1,131 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.Locale;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+
+/**
+ * Generates localized values and value references for a particular combination
+ * of localizable entity type, localized value type, and set of locales.  When
+ * loading by query, the values for all of the locales are loaded with the 
+ * same query executions, rather than one set of executions per locale
+ *  
+ * @author Glenn.Lane@kerbaya.com
+ *
+ * @param <T>
+ * the supported localizable entity type
+ * 
+ * @param <V>
+ * the supported localized value
+ */
+public interface MultiLocaleValueLoader<T, V>
+{
+	/**
+	 * Returns the locales supported by this instance
+	 * 
+	 * @return
+	 * the locales supported by this instance
+	 */
+	Set<Locale> getLocales();
+	
+	/**
+	 * Returns the localized value for a provided localizable and locale
+	 * 
+	 * @param localizable
+	 * the localizable for which to return a localized value
+	 * 
+	 * @param locale
+	 * one of this instance's locales
+	 * 
+	 * @return
+	 * the localized value for a provided localizable and locale, or 
+	 * {@code null} if there is none
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support entity resolution
+	 * 
+	 * @throws NullPointerException
+	 * {@code localizable} was {@code null}
+	 * 
+	 * @throws IllegalArgumentException
+	 * {@code locale} is not one of this instance's locales
+	 */
+	V getValue(T localizable, Locale locale);
+	
+	/**
+	 * returns a lazily generated reference to the localized value for the 
+	 * localizable of the provided {@code id} and {@code locale}
+	 * 
+	 * @param id
+	 * the entity ID for which to generate the reference
+	 * 
+	 * @param locale
+	 * one of this instance's locales
+	 * 
+	 * @return
+	 * a lazily generated reference to the localized value for the localizable 
+	 * of the provided {@code id} and {@code locale}.  Returns {@code null} if 
+	 * the provided {@code id} is {@code null}.
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support query-loading
+	 * 
+	 * @throws IllegalArgumentException
+	 * {@code locale} is not one of this instance's locales
+	 */
+	ValueReference<V> getRefById(Object id, Locale locale);
+	
+	/**
+	 * returns a lazily generated reference to the localized value for the 
+	 * provided {@code localizable} and {@code locale}
+	 * 
+	 * @param localizable
+	 * the localizable for which to generate the reference
+	 * 
+	 * @param locale
+	 * one of this instance's locales
+	 * 
+	 * @return
+	 * a lazily generated reference to the localized value for the provided 
+	 * {@code localizable} and {@code locale}
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support entity handling
+	 * 
+	 * @throws IllegalArgumentException
+	 * {@code locale} is not one of this instance's locales
+	 */
+	ValueReference<V> getRef(T localizable, Locale locale);
+	
+	/**
+	 * Populates all previously generated instances of {@link ValueReference},
+	 * for all of this instance's locales
+	 * 
+	 * @param em
+	 * the entity manager associated with previously provided localizable 
+	 * instances
+	 * 
+	 * @throws UnsupportedOperationException
+	 * this instance does not support query-loading
+	 */
+	void load(EntityManager em);
+}
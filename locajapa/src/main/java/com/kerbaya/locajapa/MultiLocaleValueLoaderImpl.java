@@ -0,0 +1,335 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Objects;
+import java.util.Set;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import com.kerbaya.locajapa.QueryBuilder.ValueQueryBuilder;
+
+final class MultiLocaleValueLoaderImpl<T, V> 
+		implements MultiLocaleValueLoader<T, V>
+{
+	/*
+	 * Each ID has one entry per locale, in localeIndexes order
+	 */
+	private final Map<Object, List<ValueLoaderEntry<V>>> idMap = 
+			new IdMap<>();
+	
+	private final Map<Locale, Integer> localeIndexes;
+	private final LocaleRegistry.Candidates[] candidates;
+	private final Set<String> allLanguageTags;
+	private final EntityHandler<? super T, ?, ? extends V> entityHandler;
+	private final ValueQueryBuilder<V> vqb;
+	
+	public MultiLocaleValueLoaderImpl(
+			Set<Locale> locales, 
+			EntityHandler<? super T, ?, ? extends V> entityHandler,
+			ValueQueryBuilder<V> vqb)
+	{
+		if (locales.isEmpty())
+		{
+			throw new IllegalArgumentException("No locales");
+		}
+		localeIndexes = new LinkedHashMap<>();
+		candidates = new LocaleRegistry.Candidates[locales.size()];
+		allLanguageTags = new LinkedHashSet<>();
+		for (Locale locale: locales)
+		{
+			int idx = localeIndexes.size();
+			localeIndexes.put(Objects.requireNonNull(locale), idx);
+			candidates[idx] = LocaleRegistry.getCandidates(locale);
+			allLanguageTags.addAll(candidates[idx].getLanguageTags());
+		}
+		this.entityHandler = entityHandler;
+		this.vqb = vqb == null ? null : vqb.copyAsReadOnly();
+	}
+	
+	private int getLocaleIndex(Locale locale)
+	{
+		Integer idx = localeIndexes.get(locale);
+		if (idx == null)
+		{
+			throw new IllegalArgumentException("Unsupported locale: " + locale);
+		}
+		return idx;
+	}
+	
+	@Override
+	public Set<Locale> getLocales()
+	{
+		return Collections.unmodifiableSet(localeIndexes.keySet());
+	}
+	
+	@Override
+	public V getValue(T localizable, Locale locale)
+	{
+		int idx = getLocaleIndex(locale);
+		if (entityHandler == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		return ValueResolver.resolve(
+				entityHandler, 
+				Objects.requireNonNull(localizable), 
+				candidates[idx]);
+	}
+
+	@Override
+	public ValueReference<V> getRef(T localizable, Locale locale)
+	{
+		int idx = getLocaleIndex(locale);
+		if (localizable == null)
+		{
+			return null;
+		}
+		if (entityHandler == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		return getRef(entityHandler.getId(localizable), localizable, idx);
+	}
+	
+	@Override
+	public ValueReference<V> getRefById(Object id, Locale locale)
+	{
+		int idx = getLocaleIndex(locale);
+		if (id == null)
+		{
+			return null;
+		}
+		if (vqb == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		return getRef(id, null, idx);
+	}
+	
+	private ValueReference<V> getRef(Object id, T instance, int idx)
+	{
+		List<ValueLoaderEntry<V>> entries = idMap.get(id);
+		if (entries == null)
+		{
+			entries = new ArrayList<>(candidates.length);
+			for (Locale locale: localeIndexes.keySet())
+			{
+				if (instance == null || entityHandler == null)
+				{
+					entries.add(new ValueLoaderEntry<>(
+							NonResolvable.<V>instance()));
+				}
+				else
+				{
+					entries.add(new ValueLoaderEntry<>(new ValueResolver<>(
+							entityHandler, instance, locale)));
+				}
+			}
+			idMap.put(id, entries);
+		}
+		return entries.get(idx);
+	}
+	
+	private static <V> boolean isLoaded(List<ValueLoaderEntry<V>> entries)
+	{
+		for (ValueLoaderEntry<V> entry: entries)
+		{
+			if (!entry.isLoaded())
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	@Override
+	public void load(EntityManager em)
+	{
+		if (vqb == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+		if (!vqb.isMatchable(allLanguageTags))
+		{
+			for (List<ValueLoaderEntry<V>> entries: idMap.values())
+			{
+				for (ValueLoaderEntry<V> entry: entries)
+				{
+					if (!entry.isLoaded())
+					{
+						entry.set(null);
+					}
+				}
+			}
+			return;
+		}
+		int maxBatchSize = vqb.getMaxBatchSize();
+		Map<Object, List<ValueLoaderEntry<V>>> batch = new IdMap<>();
+		
+		Query maxBatchQuery = null;
+		for (Entry<Object, List<ValueLoaderEntry<V>>> mapEntry: 
+				idMap.entrySet())
+		{
+			if (isLoaded(mapEntry.getValue()))
+			{
+				continue;
+			}
+			batch.put(mapEntry.getKey(), mapEntry.getValue());
+			if (batch.size() == maxBatchSize)
+			{
+				if (maxBatchQuery == null)
+				{
+					maxBatchQuery = createQuery(em, maxBatchSize);
+				}
+				flushBatch(maxBatchQuery, batch, maxBatchSize);
+			}
+		}
+		
+		if (!batch.isEmpty())
+		{
+			int querySize = vqb.getQueryBatchSize(batch.size());
+			flushBatch(
+					querySize == maxBatchSize && maxBatchQuery != null ? 
+							maxBatchQuery : createQuery(em, querySize), 
+					batch, 
+					querySize);
+		}
+	}
+	
+	private Query createQuery(EntityManager em, int idBatchSize)
+	{
+		Query q = em.createQuery(
+				vqb.getQueryText(idBatchSize, allLanguageTags.size()));
+		
+		vqb.setLanguageTagParams(q, allLanguageTags);
+		return q;
+	}
+	
+	/*
+	 * Each locale keeps the row with the highest language level among its own
+	 * candidates, as in ValueResolver.resolve: rows of the same level are 
+	 * ranked by the position of their language tag among the candidates.  
+	 * The language tag of a row is looked up once, and then tested against 
+	 * the candidates of each locale by its code
+	 */
+	@SuppressWarnings("unchecked")
+	private void flushBatch(
+			Query q, 
+			Map<Object, List<ValueLoaderEntry<V>>> batch,
+			int paramCount)
+	{
+		ValueQueryBuilder.setIdParams(q, batch.keySet(), paramCount);
+		int localeCount = candidates.length;
+		Map<Object, Object[][]> matches = new IdMap<>();
+		Map<Object, int[][]> matchRanks = new IdMap<>();
+		for (Object[] row: (List<Object[]>) q.getResultList())
+		{
+			Object id = ValueQueryBuilder.getLocalizableId(row);
+			if (!batch.containsKey(id))
+			{
+				continue;
+			}
+			Object[][] idMatches = matches.get(id);
+			int[][] idMatchRanks;
+			if (idMatches == null)
+			{
+				idMatches = new Object[localeCount][];
+				matches.put(id, idMatches);
+				idMatchRanks = new int[localeCount][2];
+				matchRanks.put(id, idMatchRanks);
+			}
+			else
+			{
+				idMatchRanks = matchRanks.get(id);
+			}
+			String languageTag = vqb.getLanguageTag(row);
+			int code = LanguageTagDictionary.peekCode(languageTag);
+			int languageLevel = ValueQueryBuilder.getLanguageLevel(row);
+			for (int i = 0; i < localeCount; i++)
+			{
+				int rank = candidates[i].getRank(code, languageTag);
+				if (rank < 0)
+				{
+					continue;
+				}
+				int[] matchRank = idMatchRanks[i];
+				if (idMatches[i] == null 
+						|| languageLevel > matchRank[0]
+						|| (languageLevel == matchRank[0] 
+								&& rank < matchRank[1]))
+				{
+					idMatches[i] = row;
+					matchRank[0] = languageLevel;
+					matchRank[1] = rank;
+				}
+			}
+		}
+		
+		Object[] values = new Object[localeCount];
+		for (Entry<Object, List<ValueLoaderEntry<V>>> e: batch.entrySet())
+		{
+			Object[][] idMatches = matches.get(e.getKey());
+			Arrays.fill(values, null);
+			for (int i = 0; i < localeCount; i++)
+			{
+				ValueLoaderEntry<V> entry = e.getValue().get(i);
+				if (entry.isLoaded())
+				{
+					continue;
+				}
+				if (idMatches == null || idMatches[i] == null)
+				{
+					entry.set(null);
+					continue;
+				}
+				/*
+				 * Locales that fall back to the same row share its value
+				 */
+				V value = null;
+				for (int j = 0; j < i; j++)
+				{
+					if (idMatches[j] == idMatches[i] && values[j] != null)
+					{
+						value = (V) values[j];
+						break;
+					}
+				}
+				if (value == null)
+				{
+					value = vqb.getValue(idMatches[i]);
+				}
+				values[i] = value;
+				entry.set(value);
+			}
+		}
+		
+		batch.clear();
+	}
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/*
+ * Holds the UTF-8 bytes of long strings in direct byte buffer slabs, outside 
+ * of the heap.  Slabs are filled in turn; when the budget is used up, the 
+ * oldest slab is recycled, and the handles that point to it become stale.
+ * Writers are serialized, while readers copy without locking: a slab's 
+ * generation is incremented before it is overwritten, so a reader that sees
+ * the same generation before and after its copy did not read a recycled 
+ * slab
+ */
+final class OffHeapStore
+{
+	private static final int MAX_SLAB_SIZE = 1 << 20;
+	
+	/*
+	 * Points to the bytes of one string.  Handles of a recycled slab are 
+	 * detected by their generation
+	 */
+	static final class Handle
+	{
+		private final int slab;
+		private final int generation;
+		private final int offset;
+		private final int length;
+		
+		private Handle(int slab, int generation, int offset, int length)
+		{
+			this.slab = slab;
+			this.generation = generation;
+			this.offset = offset;
+			this.length = length;
+		}
+	}
+	
+	private final int minLength;
+	private final int slabSize;
+	private final AtomicReferenceArray<ByteBuffer> slabs;
+	private final AtomicIntegerArray generations;
+	private int current;
+	private int position;
+	
+	public OffHeapStore(long maxBytes, int minLength)
+	{
+		this.minLength = minLength;
+		slabSize = (int) Math.min(MAX_SLAB_SIZE, maxBytes);
+		slabs = new AtomicReferenceArray<>((int) Math.min(
+				Integer.MAX_VALUE, maxBytes / slabSize));
+		generations = new AtomicIntegerArray(slabs.length());
+		slabs.set(0, ByteBuffer.allocateDirect(slabSize));
+	}
+	
+	/*
+	 * Returns a handle for strings that are long enough and fit in a slab, 
+	 * or the value itself
+	 */
+	public Object encode(Object value)
+	{
+		if (!(value instanceof String) 
+				|| ((String) value).length() < minLength)
+		{
+			return value;
+		}
+		byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+		if (bytes.length > slabSize)
+		{
+			return value;
+		}
+		synchronized (this)
+		{
+			if (position + bytes.length > slabSize)
+			{
+				current = (current + 1) % slabs.length();
+				position = 0;
+				if (slabs.get(current) == null)
+				{
+					slabs.set(current, ByteBuffer.allocateDirect(slabSize));
+				}
+				else
+				{
+					generations.incrementAndGet(current);
+				}
+			}
+			ByteBuffer slab = slabs.get(current).duplicate();
+			slab.position(position);
+			slab.put(bytes);
+			Handle handle = new Handle(
+					current, 
+					generations.get(current), 
+					position, 
+					bytes.length);
+			position += bytes.length;
+			return handle;
+		}
+	}
+	
+	/*
+	 * Returns the string of a handle, or null if its slab was recycled, 
+	 * including while its bytes were being copied
+	 */
+	public String decode(Handle handle)
+	{
+		if (generations.get(handle.slab) != handle.generation)
+		{
+			return null;
+		}
+		byte[] bytes = new byte[handle.length];
+		ByteBuffer slab = slabs.get(handle.slab).duplicate();
+		slab.position(handle.offset);
+		slab.get(bytes);
+		if (generations.get(handle.slab) != handle.generation)
+		{
+			return null;
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+	
+	public long getAllocatedBytes()
+	{
+		long allocated = 0;
+		for (int i = 0; i < slabs.length(); i++)
+		{
+			ByteBuffer slab = slabs.get(i);
+			if (slab != null)
+			{
+				allocated += slab.capacity();
+			}
+		}
+		return allocated;
+	}
+}
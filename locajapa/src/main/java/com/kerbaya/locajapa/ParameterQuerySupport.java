@@ -96,6 +96,26 @@ final class ParameterQuerySupport
 		}
 	}
 	
+	/**
+	 * Sets {@code paramCount} parameters, repeating the last of the provided
+	 * {@code parameters} for any parameters beyond the number provided
+	 */
+	public static void setQueryParameters(
+			Query q, ParameterToken pt, Iterable<?> parameters, int paramCount)
+	{
+		int idx = 0;
+		Object value = null;
+		for (Object next: parameters)
+		{
+			value = next;
+			q.setParameter(pt.getParameterPrefix() + (idx++), value);
+		}
+		while (idx < paramCount)
+		{
+			q.setParameter(pt.getParameterPrefix() + (idx++), value);
+		}
+	}
+	
 	public String createQueryText()
 	{
 		return querySupport.createQueryText();
@@ -24,10 +24,14 @@ import java.io.InputStreamReader;
 import java.io.Reader;
 import java.lang.reflect.Constructor;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
 import javax.persistence.Query;
 
@@ -53,6 +57,7 @@ final class QueryBuilder<V>
 		LANGUAGE_LEVEL_PROPERTY("languageLevelProperty"),
 		VALUE_PROPERTIES("valueProperties"),
 		ENTITY_NAME("entityName"),
+		VERSION_PROPERTY("versionProperty"),
 		;
 		
 		private final String tokenName;
@@ -116,26 +121,53 @@ final class QueryBuilder<V>
 	private static final int VALUE_QUERY_LOCALIZABLE_ID_IDX = 0;
 	private static final int VALUE_QUERY_VALUE_IDX = 1;
 	
+	private static final int CANDIDATE_QUERY_LANGUAGE_TAG_IDX = 1;
+	private static final int CANDIDATE_QUERY_LANGUAGE_LEVEL_IDX = 2;
+	private static final int CANDIDATE_QUERY_VALUE_IDX = 3;
+	
 	private static final int MAP_QUERY_LOCALIZABLE_ID_IDX = 0;
 	private static final int MAP_QUERY_LANGUAGE_TAG_ID_IDX = 1;
 	private static final int MAP_QUERY_VALUE_IDX = 2;
 	
+	private static final int REFRESH_QUERY_LOCALIZABLE_ID_IDX = 0;
+	private static final int REFRESH_QUERY_LANGUAGE_TAG_IDX = 1;
+	private static final int REFRESH_QUERY_VERSION_IDX = 2;
+	private static final int REFRESH_QUERY_VALUE_IDX = 3;
+	
 	private static final String LOCALIZED_ALIAS = "le";
-	private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+	static final int DEFAULT_MAX_BATCH_SIZE = 1000;
 	private static final int INIT_MAX_BATCH_SIZE = -1;
 	
 	private final QuerySupport valueQuery;
+	private final QuerySupport candidateQuery;
 	private final QuerySupport mapQuery;
+	private final QuerySupport filteredMapQuery;
+	private final QuerySupport refreshQuery;
+	private final QuerySupport watermarkQuery;
+	private final QuerySupport catalogQuery;
 	private int maxBatchSize;
-	private Constructor<? extends V> valueCtor;
+	private Boolean batchPadding;
+	private ValueResolution valueResolution;
+	private String entityName;
+	private String versionProperty;
+	private LanguageCodes languageCodes;
+	private LocalizedCache cache;
+	private Boolean constructorExpression;
+	private List<String> valueProperties;
+	private Class<?> valueType;
+	private ValueFactory<? extends V> valueFactory;
 	
 	private QueryBuilder()
 	{
 		StringBuilder sb = new StringBuilder();
 		char[] buffer = new char[128];
 		readQueryPattern(sb, buffer, "ValueQueryPattern.jpql");
-		valueQuery = new QuerySupport(
-				sb.toString(), EnumSet.allOf(TokenImpl.class));
+		valueQuery = new QuerySupport(sb.toString(), 
+				EnumSet.complementOf(EnumSet.of(TokenImpl.VERSION_PROPERTY)));
+		sb.setLength(0);
+		readQueryPattern(sb, buffer, "CandidateQueryPattern.jpql");
+		candidateQuery = new QuerySupport(sb.toString(), 
+				EnumSet.complementOf(EnumSet.of(TokenImpl.VERSION_PROPERTY)));
 		sb.setLength(0);
 		readQueryPattern(sb, buffer, "MapQueryPattern.jpql");
 		mapQuery = new QuerySupport(sb.toString(), EnumSet.of(
@@ -144,15 +176,60 @@ final class QueryBuilder<V>
 				TokenImpl.LANGUAGE_TAG_PROPERTY,
 				TokenImpl.LOCALIZED_PROPERTY,
 				TokenImpl.VALUE_PROPERTIES));
+		sb.setLength(0);
+		readQueryPattern(sb, buffer, "FilteredMapQueryPattern.jpql");
+		filteredMapQuery = new QuerySupport(sb.toString(), EnumSet.of(
+				TokenImpl.ENTITY_NAME,
+				TokenImpl.ID_PROPERTY,
+				TokenImpl.LANGUAGE_TAG_PROPERTY,
+				TokenImpl.LOCALIZED_PROPERTY,
+				TokenImpl.VALUE_PROPERTIES));
+		sb.setLength(0);
+		readQueryPattern(sb, buffer, "RefreshQueryPattern.jpql");
+		refreshQuery = new QuerySupport(sb.toString(), EnumSet.of(
+				TokenImpl.ENTITY_NAME,
+				TokenImpl.ID_PROPERTY,
+				TokenImpl.LANGUAGE_TAG_PROPERTY,
+				TokenImpl.LOCALIZED_PROPERTY,
+				TokenImpl.VERSION_PROPERTY,
+				TokenImpl.VALUE_PROPERTIES));
+		sb.setLength(0);
+		readQueryPattern(sb, buffer, "WatermarkQueryPattern.jpql");
+		watermarkQuery = new QuerySupport(sb.toString(), EnumSet.of(
+				TokenImpl.ENTITY_NAME,
+				TokenImpl.LOCALIZED_PROPERTY,
+				TokenImpl.VERSION_PROPERTY));
+		sb.setLength(0);
+		readQueryPattern(sb, buffer, "CatalogQueryPattern.jpql");
+		catalogQuery = new QuerySupport(sb.toString(), EnumSet.of(
+				TokenImpl.ENTITY_NAME,
+				TokenImpl.ID_PROPERTY,
+				TokenImpl.LANGUAGE_TAG_PROPERTY,
+				TokenImpl.LOCALIZED_PROPERTY,
+				TokenImpl.VALUE_PROPERTIES));
 		maxBatchSize = INIT_MAX_BATCH_SIZE;
 	}
 	
 	private QueryBuilder(QueryBuilder<V> source)
 	{
 		valueQuery = source.valueQuery.copy();
+		candidateQuery = source.candidateQuery.copy();
 		mapQuery = source.mapQuery.copy();
-		valueCtor = source.valueCtor;
+		filteredMapQuery = source.filteredMapQuery.copy();
+		refreshQuery = source.refreshQuery.copy();
+		watermarkQuery = source.watermarkQuery.copy();
+		catalogQuery = source.catalogQuery.copy();
+		valueProperties = source.valueProperties;
+		valueType = source.valueType;
+		valueFactory = source.valueFactory;
 		maxBatchSize = source.maxBatchSize;
+		batchPadding = source.batchPadding;
+		valueResolution = source.valueResolution;
+		entityName = source.entityName;
+		versionProperty = source.versionProperty;
+		languageCodes = source.languageCodes;
+		cache = source.cache;
+		constructorExpression = source.constructorExpression;
 	}
 	
 	private static void readQueryPattern(
@@ -177,14 +254,24 @@ final class QueryBuilder<V>
 	public QueryBuilder<V> setEntityName(String entityName)
 	{
 		valueQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
+		candidateQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
 		mapQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
+		filteredMapQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
+		refreshQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
+		watermarkQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
+		catalogQuery.setToken(TokenImpl.ENTITY_NAME, entityName);
+		this.entityName = entityName;
 		return this;
 	}
 	
 	public QueryBuilder<V> setIdProperty(String idProperty)
 	{
 		valueQuery.setToken(TokenImpl.ID_PROPERTY, idProperty);
+		candidateQuery.setToken(TokenImpl.ID_PROPERTY, idProperty);
 		mapQuery.setToken(TokenImpl.ID_PROPERTY, idProperty);
+		filteredMapQuery.setToken(TokenImpl.ID_PROPERTY, idProperty);
+		refreshQuery.setToken(TokenImpl.ID_PROPERTY, idProperty);
+		catalogQuery.setToken(TokenImpl.ID_PROPERTY, idProperty);
 		return this;
 	}
 	
@@ -193,6 +280,8 @@ final class QueryBuilder<V>
 	{
 		valueQuery.setToken(
 				TokenImpl.LANGUAGE_LEVEL_PROPERTY, languageLevelProperty);
+		candidateQuery.setToken(
+				TokenImpl.LANGUAGE_LEVEL_PROPERTY, languageLevelProperty);
 		return this;
 	}
 	
@@ -200,14 +289,45 @@ final class QueryBuilder<V>
 	{
 		valueQuery.setToken(
 				TokenImpl.LANGUAGE_TAG_PROPERTY, languageTagProperty);
+		candidateQuery.setToken(
+				TokenImpl.LANGUAGE_TAG_PROPERTY, languageTagProperty);
 		mapQuery.setToken(TokenImpl.LANGUAGE_TAG_PROPERTY, languageTagProperty);
+		filteredMapQuery.setToken(
+				TokenImpl.LANGUAGE_TAG_PROPERTY, languageTagProperty);
+		refreshQuery.setToken(
+				TokenImpl.LANGUAGE_TAG_PROPERTY, languageTagProperty);
+		catalogQuery.setToken(
+				TokenImpl.LANGUAGE_TAG_PROPERTY, languageTagProperty);
+		return this;
+	}
+	
+	/*
+	 * The language-code property takes the place of the language tag 
+	 * property in the query patterns
+	 */
+	public QueryBuilder<V> setLanguageCodeProperty(
+			String languageCodeProperty, 
+			Map<? extends Number, String> languageTags)
+	{
+		assertWritable();
+		LanguageCodes languageCodes = new LanguageCodes(languageTags);
+		setLanguageTagProperty(languageCodeProperty);
+		this.languageCodes = languageCodes;
 		return this;
 	}
 	
 	public QueryBuilder<V> setLocalizedProperty(String localizedProperty)
 	{
 		valueQuery.setToken(TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
+		candidateQuery.setToken(
+				TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
 		mapQuery.setToken(TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
+		filteredMapQuery.setToken(
+				TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
+		refreshQuery.setToken(TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
+		watermarkQuery.setToken(
+				TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
+		catalogQuery.setToken(TokenImpl.LOCALIZED_PROPERTY, localizedProperty);
 		return this;
 	}
 	
@@ -225,12 +345,33 @@ final class QueryBuilder<V>
 		return sb;
 	}
 	
+	private static CharSequence createConstructorExpressionSequence(
+			Class<?> valueType, List<String> propertyNames)
+	{
+		StringBuilder sb = new StringBuilder();
+		sb.append(", NEW ");
+		sb.append(valueType.getName());
+		sb.append('(');
+		boolean first = true;
+		for (String propertyName: propertyNames)
+		{
+			if (!first)
+			{
+				sb.append(", ");
+			}
+			first = false;
+			sb.append(LOCALIZED_ALIAS);
+			sb.append('.');
+			sb.append(propertyName);
+		}
+		sb.append(')');
+		return sb;
+	}
+	
 	public QueryBuilder<V> setValueProperty(String valueProperty)
 	{
-		CharSequence propertySequence = createLocalizedPropertySequence(
-				Collections.singletonList(valueProperty));
-		valueQuery.setToken(TokenImpl.VALUE_PROPERTIES, propertySequence);
-		mapQuery.setToken(TokenImpl.VALUE_PROPERTIES, propertySequence);
+		setValueProperties(
+				null, null, Collections.singletonList(valueProperty));
 		return this;
 	}
 	
@@ -242,18 +383,45 @@ final class QueryBuilder<V>
 			throw new IllegalArgumentException(
 					"Constructor parameters / value properties count mismatch");
 		}
-		setValueProperties(valueCtor, valueProperties);
+		setValueProperties(
+				new ConstructorValueFactory<>(valueCtor), 
+				valueCtor.getDeclaringClass(), 
+				valueProperties);
+		return this;
+	}
+	
+	public QueryBuilder<V> setValueFactory(
+			ValueFactory<? extends V> valueFactory, 
+			List<String> valueProperties)
+	{
+		if (valueProperties.isEmpty())
+		{
+			throw new IllegalArgumentException("No value properties");
+		}
+		setValueProperties(
+				Objects.requireNonNull(valueFactory), null, valueProperties);
 		return this;
 	}
 	
+	/*
+	 * The value properties token is only substituted when the query builders
+	 * are created, since the selection depends on constructorExpression
+	 */
 	private void setValueProperties(
-			Constructor<? extends V> valueCtor, List<String> valueProperties)
+			ValueFactory<? extends V> valueFactory, 
+			Class<?> valueType,
+			List<String> valueProperties)
 	{
-		CharSequence propertySequence = createLocalizedPropertySequence(
-				valueProperties);
-		valueQuery.setToken(TokenImpl.VALUE_PROPERTIES, propertySequence);
-		mapQuery.setToken(TokenImpl.VALUE_PROPERTIES, propertySequence);
-		this.valueCtor = valueCtor;
+		assertWritable();
+		if (this.valueProperties != null)
+		{
+			throw new IllegalStateException(
+					"already set: " + TokenImpl.VALUE_PROPERTIES);
+		}
+		this.valueProperties = Collections.unmodifiableList(
+				new ArrayList<>(valueProperties));
+		this.valueType = valueType;
+		this.valueFactory = valueFactory;
 	}
 	
 	@SuppressWarnings("unchecked")
@@ -279,7 +447,8 @@ final class QueryBuilder<V>
 					"Could not find constructor with parameter count: " 
 					+ valueProperties.size());
 		}
-		setValueProperties(match, valueProperties);
+		setValueProperties(
+				new ConstructorValueFactory<>(match), type, valueProperties);
 		return this;
 	}
 	
@@ -301,15 +470,91 @@ final class QueryBuilder<V>
 		return this;
 	}
 	
+	public QueryBuilder<V> setConstructorExpression(
+			boolean constructorExpression)
+	{
+		assertWritable();
+		if (this.constructorExpression != null)
+		{
+			throw new IllegalStateException(
+					"already set: constructorExpression");
+		}
+		this.constructorExpression = constructorExpression;
+		return this;
+	}
+	
+	public QueryBuilder<V> setBatchPadding(boolean batchPadding)
+	{
+		if (valueQuery.isReadOnly() || mapQuery.isReadOnly())
+		{
+			throw new IllegalStateException("read-only");
+		}
+		if (this.batchPadding != null)
+		{
+			throw new IllegalStateException("already set: batchPadding");
+		}
+		this.batchPadding = batchPadding;
+		return this;
+	}
+	
+	public QueryBuilder<V> setValueResolution(ValueResolution valueResolution)
+	{
+		assertWritable();
+		if (this.valueResolution != null)
+		{
+			throw new IllegalStateException("already set: valueResolution");
+		}
+		this.valueResolution = Objects.requireNonNull(valueResolution);
+		return this;
+	}
+	
+	public QueryBuilder<V> setVersionProperty(String versionProperty)
+	{
+		refreshQuery.setToken(TokenImpl.VERSION_PROPERTY, versionProperty);
+		watermarkQuery.setToken(TokenImpl.VERSION_PROPERTY, versionProperty);
+		this.versionProperty = versionProperty;
+		return this;
+	}
+	
+	public QueryBuilder<V> setCache(LocalizedCache cache)
+	{
+		assertWritable();
+		if (this.cache != null)
+		{
+			throw new IllegalStateException("already set: cache");
+		}
+		this.cache = Objects.requireNonNull(cache);
+		return this;
+	}
+	
 	public boolean isReadOnly()
 	{
-		return valueQuery.isReadOnly() || mapQuery.isReadOnly();
+		return valueQuery.isReadOnly() 
+				|| candidateQuery.isReadOnly() 
+				|| mapQuery.isReadOnly()
+				|| filteredMapQuery.isReadOnly()
+				|| refreshQuery.isReadOnly()
+				|| watermarkQuery.isReadOnly()
+				|| catalogQuery.isReadOnly();
+	}
+	
+	private void assertWritable()
+	{
+		if (isReadOnly())
+		{
+			throw new IllegalStateException("read-only");
+		}
 	}
 	
 	public QueryBuilder<V> asReadOnly()
 	{
 		valueQuery.asReadOnly();
+		candidateQuery.asReadOnly();
 		mapQuery.asReadOnly();
+		filteredMapQuery.asReadOnly();
+		refreshQuery.asReadOnly();
+		watermarkQuery.asReadOnly();
+		catalogQuery.asReadOnly();
 		return this;
 	}
 	
@@ -329,58 +574,211 @@ final class QueryBuilder<V>
 				DEFAULT_MAX_BATCH_SIZE : maxBatchSize;
 	}
 	
+	public boolean isBatchPadding()
+	{
+		return batchPadding != null && batchPadding;
+	}
+	
+	public ValueResolution getValueResolution()
+	{
+		return valueResolution == null ? 
+				ValueResolution.SUBQUERY : valueResolution;
+	}
+	
+	public boolean isConstructorExpression()
+	{
+		return constructorExpression != null && constructorExpression;
+	}
+	
+	private CharSequence createValuePropertySequence()
+	{
+		if (!isConstructorExpression())
+		{
+			return createLocalizedPropertySequence(valueProperties);
+		}
+		if (valueType == null)
+		{
+			throw new IllegalStateException(
+					"constructorExpression requires a value constructor");
+		}
+		if (valueType.getEnclosingClass() != null)
+		{
+			/*
+			 * Providers differ on the name of a nested type: some only load
+			 * the binary name (Outer$Inner), others only the canonical name 
+			 * (Outer.Inner)
+			 */
+			throw new IllegalStateException(
+					"constructorExpression requires a top-level value type");
+		}
+		return createConstructorExpressionSequence(valueType, valueProperties);
+	}
+	
+	/*
+	 * The value selection tells apart factories of the same entity that 
+	 * select different rows or values (by the map query text, which names 
+	 * every property), or that create different values from them (by the 
+	 * value factory instance)
+	 */
+	public LoaderCache createLoaderCache()
+	{
+		if (cache == null)
+		{
+			return null;
+		}
+		return new LoaderCache(
+				cache, 
+				entityName, 
+				Arrays.asList(
+						createQueryText(mapQuery), getRowValueFactory()));
+	}
+	
+	private String createQueryText(QuerySupport query)
+	{
+		if (valueProperties == null)
+		{
+			return query.createQueryText();
+		}
+		QuerySupport qs = query.copy();
+		qs.setToken(TokenImpl.VALUE_PROPERTIES, createValuePropertySequence());
+		return qs.createQueryText();
+	}
+	
+	/*
+	 * With a constructor expression, the provider creates the value itself
+	 */
+	private ValueFactory<? extends V> getRowValueFactory()
+	{
+		return isConstructorExpression() ? null : valueFactory;
+	}
+	
+	/*
+	 * With padding, the ID parameter count is rounded up to the next power of
+	 * two (capped at maxBatchSize), so at most log2(maxBatchSize) + 2 distinct
+	 * ID counts are ever sent to the database
+	 */
+	private static int getQueryBatchSize(
+			int batchSize, int maxBatchSize, boolean batchPadding)
+	{
+		if (!batchPadding || batchSize <= 1)
+		{
+			return batchSize;
+		}
+		return Math.min(
+				Integer.highestOneBit(batchSize - 1) << 1, maxBatchSize);
+	}
+	
 	@SuppressWarnings("unchecked")
 	private static <V> V getValue(
-			Constructor<? extends V> valueCtor, 
+			ValueFactory<? extends V> valueFactory, 
 			Object[] queryResultRow, 
 			int valueIdx)
 	{
-		if (valueCtor == null)
+		if (valueFactory == null)
 		{
 			return (V) queryResultRow[valueIdx];
 		}
-		try
+		return valueFactory.createValue(queryResultRow, valueIdx);
+	}
+	
+	private static String getLanguageTag(
+			LanguageCodes languageCodes, 
+			Object[] queryResultRow, 
+			int languageTagIdx)
+	{
+		if (languageCodes == null)
 		{
-			return valueCtor.newInstance(Arrays.copyOfRange(
-					queryResultRow, 
-					valueIdx, 
-					queryResultRow.length));
+			return (String) queryResultRow[languageTagIdx];
 		}
-		catch (ReflectiveOperationException e)
+		return languageCodes.getLanguageTag(queryResultRow[languageTagIdx]);
+	}
+	
+	/*
+	 * With language codes, the unmapped language tags are left out, and the 
+	 * remaining parameters repeat the last code, which keeps the query text 
+	 * of the language tag count.  Loaders do not query at all when no 
+	 * language tag has a code (see isMatchable)
+	 */
+	private static void setLanguageTagParams(
+			LanguageCodes languageCodes, 
+			Query query, 
+			Collection<String> tagParams)
+	{
+		if (languageCodes == null)
 		{
-			throw new IllegalStateException(e);
+			ParameterQuerySupport.setQueryParameters(
+					query, ParameterTokenImpl.LANGUAGE_TAG_PARAMS, tagParams);
 		}
+		else
+		{
+			ParameterQuerySupport.setQueryParameters(
+					query, 
+					ParameterTokenImpl.LANGUAGE_TAG_PARAMS, 
+					languageCodes.getCodes(tagParams), 
+					tagParams.size());
+		}
+	}
+	
+	private static boolean isMatchable(
+			LanguageCodes languageCodes, Collection<String> tagParams)
+	{
+		return languageCodes == null || languageCodes.hasCode(tagParams);
 	}
 	
-	public static final class ValueQueryBuilder<V>
+	public static final class ValueQueryBuilder<V> 
+			implements QueryTextCache.Generator
 	{
-		private final Constructor<? extends V> valueCtor;
+		private final ValueResolution valueResolution;
+		private final ValueFactory<? extends V> valueFactory;
 		private final int maxBatchSize;
+		private final boolean batchPadding;
+		private final LanguageCodes languageCodes;
 		private final ParameterQuerySupport querySupport;
+		private final QueryTextCache queryTextCache = new QueryTextCache();
 		
 		private ValueQueryBuilder(
-				Constructor<? extends V> valueCtor, 
+				ValueResolution valueResolution,
+				ValueFactory<? extends V> valueFactory, 
 				int maxBatchSize, 
+				boolean batchPadding,
+				LanguageCodes languageCodes,
 				String queryPattern)
 		{
-			this.valueCtor = valueCtor;
+			this.valueResolution = valueResolution;
+			this.valueFactory = valueFactory;
 			this.maxBatchSize = maxBatchSize;
+			this.batchPadding = batchPadding;
+			this.languageCodes = languageCodes;
 			querySupport = new ParameterQuerySupport(
 					queryPattern, EnumSet.allOf(ParameterTokenImpl.class));
 		}
 		
 		private ValueQueryBuilder(ValueQueryBuilder<V> source)
 		{
-			valueCtor = source.valueCtor;
+			valueResolution = source.valueResolution;
+			valueFactory = source.valueFactory;
 			maxBatchSize = source.maxBatchSize;
+			batchPadding = source.batchPadding;
+			languageCodes = source.languageCodes;
 			querySupport = source.querySupport.copy();
 		}
 		
+		public ValueResolution getValueResolution()
+		{
+			return valueResolution;
+		}
+		
 		public int getMaxBatchSize()
 		{
 			return maxBatchSize;
 		}
 		
+		public int getQueryBatchSize(int batchSize)
+		{
+			return QueryBuilder.getQueryBatchSize(
+					batchSize, maxBatchSize, batchPadding);
+		}
+		
 		public ValueQueryBuilder<V> addLanguageTagParams(int count)
 		{
 			querySupport.setToken(
@@ -394,17 +792,26 @@ final class QueryBuilder<V>
 			return this;
 		}
 		
-		public static void setLanguageTagParams(
-				Query query, Iterable<String> tagParams)
+		public void setLanguageTagParams(
+				Query query, Collection<String> tagParams)
 		{
-			ParameterQuerySupport.setQueryParameters(
-					query, ParameterTokenImpl.LANGUAGE_TAG_PARAMS, tagParams);
+			QueryBuilder.setLanguageTagParams(languageCodes, query, tagParams);
 		}
 		
-		public static void setIdParams(Query query, Iterable<?> idParams)
+		/*
+		 * Returns false if no row can match the language tags, because none 
+		 * of them has a language code
+		 */
+		public boolean isMatchable(Collection<String> tagParams)
+		{
+			return QueryBuilder.isMatchable(languageCodes, tagParams);
+		}
+		
+		public static void setIdParams(
+				Query query, Iterable<?> idParams, int paramCount)
 		{
 			ParameterQuerySupport.setQueryParameters(
-					query, ParameterTokenImpl.ID_PARAMS, idParams);
+					query, ParameterTokenImpl.ID_PARAMS, idParams, paramCount);
 		}
 		
 		public boolean isReadOnly()
@@ -428,44 +835,106 @@ final class QueryBuilder<V>
 			return isReadOnly() ? this : copy().asReadOnly();
 		}
 		
+		/*
+		 * Both value query patterns select the ID first
+		 */
 		public static Object getLocalizableId(Object[] queryResultRow)
 		{
 			return queryResultRow[VALUE_QUERY_LOCALIZABLE_ID_IDX];
 		}
 		
+		/*
+		 * Only selected by the IN_MEMORY query
+		 */
+		public String getLanguageTag(Object[] queryResultRow)
+		{
+			return QueryBuilder.getLanguageTag(
+					languageCodes, 
+					queryResultRow, 
+					CANDIDATE_QUERY_LANGUAGE_TAG_IDX);
+		}
+		
+		/*
+		 * Only selected by the IN_MEMORY query
+		 */
+		public static int getLanguageLevel(Object[] queryResultRow)
+		{
+			return ((Number) queryResultRow[
+					CANDIDATE_QUERY_LANGUAGE_LEVEL_IDX]).intValue();
+		}
+		
 		public V getValue(Object[] queryResultRow)
 		{
 			return QueryBuilder.getValue(
-					valueCtor, queryResultRow, VALUE_QUERY_VALUE_IDX);
+					valueFactory, 
+					queryResultRow, 
+					valueResolution == ValueResolution.IN_MEMORY ? 
+							CANDIDATE_QUERY_VALUE_IDX : VALUE_QUERY_VALUE_IDX);
 		}
 		
 		public String createQueryText()
 		{
 			return querySupport.createQueryText();
 		}
+		
+		@Override
+		public String createQueryText(int idCount, int languageTagCount)
+		{
+			return copy()
+					.addLanguageTagParams(languageTagCount)
+					.addIdParams(idCount)
+					.createQueryText();
+		}
+		
+		public String getQueryText(int idCount, int languageTagCount)
+		{
+			return queryTextCache.get(this, idCount, languageTagCount);
+		}
+		
+		public int getQueryShapeCount()
+		{
+			return queryTextCache.size();
+		}
 	}
 	
-	public static final class MapQueryBuilder<V>
+	public static final class MapQueryBuilder<V> 
+			implements QueryTextCache.Generator
 	{
-		private final Constructor<? extends V> valueCtor;
+		private final ValueFactory<? extends V> valueFactory;
 		private final int maxBatchSize;
+		private final boolean batchPadding;
+		private final boolean languageTagFiltered;
+		private final LanguageCodes languageCodes;
 		private final ParameterQuerySupport querySupport;
+		private final QueryTextCache queryTextCache = new QueryTextCache();
 		
 		private MapQueryBuilder(
-				Constructor<? extends V> valueCtor, 
+				ValueFactory<? extends V> valueFactory, 
 				int maxBatchSize, 
+				boolean batchPadding,
+				boolean languageTagFiltered,
+				LanguageCodes languageCodes,
 				String queryPattern)
 		{
-			this.valueCtor = valueCtor;
+			this.valueFactory = valueFactory;
 			this.maxBatchSize = maxBatchSize;
+			this.batchPadding = batchPadding;
+			this.languageCodes = languageCodes;
 			querySupport = new ParameterQuerySupport(
-					queryPattern, EnumSet.of(ParameterTokenImpl.ID_PARAMS));
+					queryPattern, 
+					languageTagFiltered ? 
+							EnumSet.allOf(ParameterTokenImpl.class) : 
+							EnumSet.of(ParameterTokenImpl.ID_PARAMS));
+			this.languageTagFiltered = languageTagFiltered;
 		}
 		
 		private MapQueryBuilder(MapQueryBuilder<V> source)
 		{
-			valueCtor = source.valueCtor;
+			valueFactory = source.valueFactory;
 			maxBatchSize = source.maxBatchSize;
+			batchPadding = source.batchPadding;
+			languageTagFiltered = source.languageTagFiltered;
+			languageCodes = source.languageCodes;
 			querySupport = source.querySupport.copy();
 		}
 		
@@ -474,16 +943,45 @@ final class QueryBuilder<V>
 			return maxBatchSize;
 		}
 		
+		public int getQueryBatchSize(int batchSize)
+		{
+			return QueryBuilder.getQueryBatchSize(
+					batchSize, maxBatchSize, batchPadding);
+		}
+		
 		public MapQueryBuilder<V> addIdParams(int count)
 		{
 			querySupport.setToken(ParameterTokenImpl.ID_PARAMS, count);
 			return this;
 		}
 		
-		public static void setIdParams(Query q, Iterable<?> idParams)
+		public MapQueryBuilder<V> addLanguageTagParams(int count)
+		{
+			querySupport.setToken(
+					ParameterTokenImpl.LANGUAGE_TAG_PARAMS, count);
+			return this;
+		}
+		
+		public void setLanguageTagParams(
+				Query query, Collection<String> tagParams)
+		{
+			QueryBuilder.setLanguageTagParams(languageCodes, query, tagParams);
+		}
+		
+		/*
+		 * Returns false if no row can match the language tags, because none 
+		 * of them has a language code
+		 */
+		public boolean isMatchable(Collection<String> tagParams)
+		{
+			return QueryBuilder.isMatchable(languageCodes, tagParams);
+		}
+		
+		public static void setIdParams(
+				Query q, Iterable<?> idParams, int paramCount)
 		{
 			ParameterQuerySupport.setQueryParameters(
-					q, ParameterTokenImpl.ID_PARAMS, idParams);
+					q, ParameterTokenImpl.ID_PARAMS, idParams, paramCount);
 		}
 		
 		public boolean isReadOnly()
@@ -512,34 +1010,224 @@ final class QueryBuilder<V>
 			return queryResultRow[MAP_QUERY_LOCALIZABLE_ID_IDX];
 		}
 		
-		public static String getLanguageTag(Object[] queryResultRow)
+		public String getLanguageTag(Object[] queryResultRow)
 		{
-			return (String) queryResultRow[MAP_QUERY_LANGUAGE_TAG_ID_IDX];
+			return QueryBuilder.getLanguageTag(
+					languageCodes, 
+					queryResultRow, 
+					MAP_QUERY_LANGUAGE_TAG_ID_IDX);
 		}
 		
 		public V getValue(Object[] queryResultRow)
 		{
 			return QueryBuilder.getValue(
-					valueCtor, queryResultRow, MAP_QUERY_VALUE_IDX);
+					valueFactory, queryResultRow, MAP_QUERY_VALUE_IDX);
 		}
 		
 		public String createQueryText()
 		{
 			return querySupport.createQueryText();
 		}
+		
+		@Override
+		public String createQueryText(int idCount, int languageTagCount)
+		{
+			MapQueryBuilder<V> mqb = copy().addIdParams(idCount);
+			if (languageTagFiltered)
+			{
+				mqb.addLanguageTagParams(languageTagCount);
+			}
+			return mqb.createQueryText();
+		}
+		
+		public String getQueryText(int idCount)
+		{
+			return queryTextCache.get(this, idCount, 0);
+		}
+		
+		public String getQueryText(int idCount, int languageTagCount)
+		{
+			return queryTextCache.get(this, idCount, languageTagCount);
+		}
+		
+		public int getQueryShapeCount()
+		{
+			return queryTextCache.size();
+		}
 	}
 	
 	
-	public ValueQueryBuilder<V> createValueQueryBuilder()
+	public ValueQueryBuilder<V> createValueQueryBuilder(
+			ValueResolution valueResolution)
 	{
+		if (valueResolution == ValueResolution.ADAPTIVE)
+		{
+			throw new IllegalArgumentException(
+					"no query for " + valueResolution);
+		}
 		return new ValueQueryBuilder<>(
-				valueCtor, getMaxBatchSize(), valueQuery.createQueryText());
+				valueResolution,
+				getRowValueFactory(), 
+				getMaxBatchSize(), 
+				isBatchPadding(), 
+				languageCodes,
+				createQueryText(
+						valueResolution == ValueResolution.IN_MEMORY ? 
+								candidateQuery : valueQuery));
+	}
+	
+	/*
+	 * Selects the localized rows changed since a watermark, and the initial
+	 * watermark
+	 */
+	public static final class RefreshQueryBuilder<V>
+	{
+		private final ValueFactory<? extends V> valueFactory;
+		private final LanguageCodes languageCodes;
+		private final String queryText;
+		private final String watermarkQueryText;
+		
+		private RefreshQueryBuilder(
+				ValueFactory<? extends V> valueFactory,
+				LanguageCodes languageCodes,
+				String queryText,
+				String watermarkQueryText)
+		{
+			this.valueFactory = valueFactory;
+			this.languageCodes = languageCodes;
+			this.queryText = queryText;
+			this.watermarkQueryText = watermarkQueryText;
+		}
+		
+		public String getQueryText()
+		{
+			return queryText;
+		}
+		
+		public String getWatermarkQueryText()
+		{
+			return watermarkQueryText;
+		}
+		
+		public static void setWatermarkParam(Query query, Object watermark)
+		{
+			query.setParameter("watermark", watermark);
+		}
+		
+		public static Object getLocalizableId(Object[] queryResultRow)
+		{
+			return queryResultRow[REFRESH_QUERY_LOCALIZABLE_ID_IDX];
+		}
+		
+		public String getLanguageTag(Object[] queryResultRow)
+		{
+			return QueryBuilder.getLanguageTag(
+					languageCodes, 
+					queryResultRow, 
+					REFRESH_QUERY_LANGUAGE_TAG_IDX);
+		}
+		
+		public static Object getVersion(Object[] queryResultRow)
+		{
+			return queryResultRow[REFRESH_QUERY_VERSION_IDX];
+		}
+		
+		public V getValue(Object[] queryResultRow)
+		{
+			return QueryBuilder.getValue(
+					valueFactory, queryResultRow, REFRESH_QUERY_VALUE_IDX);
+		}
+	}
+	
+	/*
+	 * Selects every localized row of the entity, in the columns of the map 
+	 * query
+	 */
+	public static final class CatalogQueryBuilder<V>
+	{
+		private final ValueFactory<? extends V> valueFactory;
+		private final LanguageCodes languageCodes;
+		private final String queryText;
+		
+		private CatalogQueryBuilder(
+				ValueFactory<? extends V> valueFactory, 
+				LanguageCodes languageCodes,
+				String queryText)
+		{
+			this.valueFactory = valueFactory;
+			this.languageCodes = languageCodes;
+			this.queryText = queryText;
+		}
+		
+		public String getQueryText()
+		{
+			return queryText;
+		}
+		
+		public static Object getLocalizableId(Object[] queryResultRow)
+		{
+			return queryResultRow[MAP_QUERY_LOCALIZABLE_ID_IDX];
+		}
+		
+		public String getLanguageTag(Object[] queryResultRow)
+		{
+			return QueryBuilder.getLanguageTag(
+					languageCodes, 
+					queryResultRow, 
+					MAP_QUERY_LANGUAGE_TAG_ID_IDX);
+		}
+		
+		public V getValue(Object[] queryResultRow)
+		{
+			return QueryBuilder.getValue(
+					valueFactory, queryResultRow, MAP_QUERY_VALUE_IDX);
+		}
 	}
 	
 	public MapQueryBuilder<V> createMapQueryBuilder()
 	{
 		return new MapQueryBuilder<>(
-				valueCtor, getMaxBatchSize(), mapQuery.createQueryText());
+				getRowValueFactory(), 
+				getMaxBatchSize(), 
+				isBatchPadding(), 
+				false,
+				languageCodes,
+				createQueryText(mapQuery));
+	}
+	
+	public MapQueryBuilder<V> createFilteredMapQueryBuilder()
+	{
+		return new MapQueryBuilder<>(
+				getRowValueFactory(), 
+				getMaxBatchSize(), 
+				isBatchPadding(), 
+				true,
+				languageCodes,
+				createQueryText(filteredMapQuery));
+	}
+	
+	public CatalogQueryBuilder<V> createCatalogQueryBuilder()
+	{
+		return new CatalogQueryBuilder<>(
+				getRowValueFactory(), 
+				languageCodes, 
+				createQueryText(catalogQuery));
+	}
+	
+	/*
+	 * Returns null unless a version property was set
+	 */
+	public RefreshQueryBuilder<V> createRefreshQueryBuilder()
+	{
+		if (versionProperty == null)
+		{
+			return null;
+		}
+		return new RefreshQueryBuilder<>(
+				getRowValueFactory(), 
+				languageCodes,
+				createQueryText(refreshQuery), 
+				watermarkQuery.createQueryText());
 	}
 
 }
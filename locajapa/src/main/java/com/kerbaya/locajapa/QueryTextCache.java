@@ -0,0 +1,71 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A thread-safe cache of finished query texts, keyed by the number of ID and
+ * language tag parameters.  Each read-only query builder owns one instance, so
+ * a query text is only assembled the first time a particular shape is needed.
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ *
+ */
+final class QueryTextCache
+{
+	interface Generator
+	{
+		String createQueryText(int idCount, int languageTagCount);
+	}
+	
+	private final ConcurrentMap<Long, String> queryTexts = 
+			new ConcurrentHashMap<>();
+	
+	private static Long key(int idCount, int languageTagCount)
+	{
+		return ((long) idCount << 32) | languageTagCount;
+	}
+	
+	public String get(
+			Generator generator, int idCount, int languageTagCount)
+	{
+		Long key = key(idCount, languageTagCount);
+		String queryText = queryTexts.get(key);
+		if (queryText == null)
+		{
+			queryText = generator.createQueryText(idCount, languageTagCount);
+			String existing = queryTexts.putIfAbsent(key, queryText);
+			if (existing != null)
+			{
+				queryText = existing;
+			}
+		}
+		return queryText;
+	}
+	
+	/**
+	 * Returns the number of distinct query texts generated by this instance
+	 */
+	public int size()
+	{
+		return queryTexts.size();
+	}
+}
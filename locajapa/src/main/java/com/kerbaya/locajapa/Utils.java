@@ -18,35 +18,50 @@
  */
 package com.kerbaya.locajapa;
 
-import java.util.Collection;
-import java.util.Collections;
-import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
-import java.util.ResourceBundle.Control;
+import java.util.Map;
 import java.util.Set;
 
 final class Utils
 {
-	private static final Control CONTROL = Control.getControl(
-			Control.FORMAT_DEFAULT);
-	
 	private Utils() {}
 	
-	public static List<Locale> getCandidateLocales(Locale locale)
+	/*
+	 * Shared by every caller: must not be modified
+	 */
+	public static Set<String> getCandidateLanguageTags(Locale locale)
 	{
-		return Collections.unmodifiableList(
-				CONTROL.getCandidateLocales("", locale));
+		return LocaleRegistry.getCandidates(locale).getLanguageTags();
 	}
 	
-	public static Set<String> getCandidateLanguageTags(Locale locale)
+	/*
+	 * Same rule as ValueResolver.resolve: the candidate locale of the map with
+	 * the highest language level wins, and candidates of the same level are 
+	 * ranked by their position among the candidates.  Returns null if the map
+	 * has no candidate locale
+	 */
+	public static <V> V resolve(
+			Map<Locale, ? extends V> map, LocaleRegistry.Candidates candidates)
 	{
-		Collection<Locale> candidates = CONTROL.getCandidateLocales("", locale);
-		Set<String> set = new HashSet<>(candidates.size());
-		for (Locale candidate: candidates)
+		List<Locale> locales = candidates.getLocales();
+		V match = null;
+		int matchLanguageLevel = -1;
+		for (int rank = 0; rank < locales.size(); rank++)
 		{
-			set.add(candidate.toLanguageTag());
+			Locale candidate = locales.get(rank);
+			V value = map.get(candidate);
+			if (value == null && !map.containsKey(candidate))
+			{
+				continue;
+			}
+			int languageLevel = candidates.getLanguageLevel(rank);
+			if (languageLevel > matchLanguageLevel)
+			{
+				match = value;
+				matchLanguageLevel = languageLevel;
+			}
 		}
-		return Collections.unmodifiableSet(set);
+		return match;
 	}
 }
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+/**
+ * Creates localized values from the localized entity properties selected by a
+ * query-loading {@link LoaderFactory}.  Implementations are called once per
+ * query result row, so they should avoid needless work and allocation, and 
+ * they must be thread-safe (a {@link LoaderFactory} is shared by all of its 
+ * loaders).
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ *
+ * @param <V>
+ * the localized value type
+ */
+public interface ValueFactory<V>
+{
+	/**
+	 * Creates a localized value
+	 * 
+	 * @param properties
+	 * the query result row containing the value properties.  Must not be 
+	 * modified or retained
+	 * 
+	 * @param offset
+	 * the index in {@code properties} of the first value property.  The value
+	 * properties follow in the order in which they were specified to 
+	 * {@link LoaderFactory.Builder#setValueFactory(ValueFactory, 
+	 * java.util.List)}
+	 * 
+	 * @return
+	 * the localized value
+	 */
+	V createValue(Object[] properties, int offset);
+}
@@ -18,7 +18,10 @@
  */
 package com.kerbaya.locajapa;
 
-import java.util.HashMap;
+import java.io.ObjectStreamException;
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.EnumMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
@@ -27,30 +30,121 @@ import java.util.Set;
 import java.util.Map.Entry;
 
 import javax.persistence.EntityManager;
+import javax.persistence.EntityNotFoundException;
 import javax.persistence.Query;
 
 import com.kerbaya.locajapa.QueryBuilder.ValueQueryBuilder;
 
 final class ValueLoaderImpl<T, V> implements ValueLoader<T, V>
 {
-	private final Map<Object, ValueLoaderEntry<V>> idMap = new HashMap<>();
+	/*
+	 * A reference to the slot of an ID.  Until it is loaded, the reference
+	 * points to its loader, whose slot holds the localizable instance the
+	 * reference was created for (if any).  Loading stores the value in the 
+	 * reference, and detaches it from the loader, so that loaded references
+	 * do not keep the loader (or its entity manager) reachable
+	 */
+	private static final class Ref<V> implements ValueReference<V>, Serializable
+	{
+		private static final long serialVersionUID = 3271941605842177493L;
+		
+		private transient ValueLoaderImpl<?, V> loader;
+		private final int slot;
+		private V value;
+		
+		public Ref(ValueLoaderImpl<?, V> loader, int slot)
+		{
+			this.loader = loader;
+			this.slot = slot;
+		}
+		
+		@Override
+		public V get()
+		{
+			ValueLoaderImpl<?, V> loader = this.loader;
+			if (loader != null)
+			{
+				loader.loadPending(this);
+			}
+			return value;
+		}
+		
+		public boolean isLoaded()
+		{
+			return loader == null;
+		}
+		
+		public void set(V value)
+		{
+			assert loader != null;
+			this.value = value;
+			loader.slots[slot] = null;
+			loader = null;
+		}
+		
+		/*
+		 * Serialized detached from the loader
+		 */
+		private Object writeReplace() throws ObjectStreamException
+		{
+			if (loader == null)
+			{
+				ValueLoaderEntry<V> entry = new ValueLoaderEntry<>(null);
+				entry.value = value;
+				return entry;
+			}
+			return new ValueLoaderEntry<>(loader.createResolver(slot));
+		}
+	}
 	
+	private final Map<Object, Ref<V>> idMap = new IdMap<>();
+	private Object[] slots = new Object[16];
+	
+	private final Locale locale;
+	private final LocaleRegistry.Candidates candidates;
 	private final Set<String> languageTags;
 	private final EntityHandler<? super T, ?, ? extends V> entityHandler;
 	private final ValueQueryBuilder<V> vqb;
+	private final AdaptiveResolution<V> adaptiveResolution;
+	private final LoaderCache cache;
+	private final CatalogSnapshot<V> snapshot;
+	private MapLoaderImpl<T, V> mapLoader;
+	private EntityManager autoLoadEntityManager;
 	
 	public ValueLoaderImpl(
 			Locale locale, 
 			EntityHandler<? super T, ?, ? extends V> entityHandler,
-			ValueQueryBuilder<V> vqb)
+			ValueQueryBuilder<V> vqb,
+			AdaptiveResolution<V> adaptiveResolution,
+			LoaderCache cache,
+			CatalogSnapshot<V> snapshot)
 	{
-		languageTags = Utils.getCandidateLanguageTags(locale);
+		this.locale = locale;
+		candidates = LocaleRegistry.getCandidates(locale);
+		languageTags = candidates.getLanguageTags();
 		this.entityHandler = entityHandler;
-		this.vqb = vqb == null ? 
-				null 
-				: vqb.copy()
-						.addLanguageTagParams(languageTags.size())
-						.asReadOnly();
+		this.vqb = vqb == null ? null : vqb.copyAsReadOnly();
+		this.adaptiveResolution = adaptiveResolution;
+		this.cache = cache;
+		this.snapshot = snapshot;
+	}
+	
+	/*
+	 * IDs that are also registered with the map loader are resolved from its
+	 * maps rather than by the value query
+	 */
+	public void setMapLoader(MapLoaderImpl<T, V> mapLoader)
+	{
+		this.mapLoader = mapLoader;
+	}
+	
+	/*
+	 * IDs registered after an automatic load are left unloaded until the next
+	 * one
+	 */
+	public void setAutoLoad(EntityManager autoLoadEntityManager)
+	{
+		this.autoLoadEntityManager = autoLoadEntityManager;
 	}
 	
 	@Override
@@ -63,7 +157,7 @@ final class ValueLoaderImpl<T, V> implements ValueLoader<T, V>
 		return ValueResolver.resolve(
 				entityHandler, 
 				Objects.requireNonNull(localizable), 
-				languageTags);
+				candidates);
 	}
 
 	public ValueReference<V> getRef(T localizable)
@@ -94,26 +188,71 @@ final class ValueLoaderImpl<T, V> implements ValueLoader<T, V>
 	
 	private ValueReference<V> getRef(Object id, T instance)
 	{
-		ValueLoaderEntry<V> entry = idMap.get(id);
+		Ref<V> entry = idMap.get(id);
 		if (entry != null)
 		{
 			return entry;
 		}
 		
-		if (instance == null || entityHandler == null)
+		int slot = idMap.size();
+		if (slot == slots.length)
 		{
-			entry = new ValueLoaderEntry<>(NonResolvable.<V>instance());
+			slots = Arrays.copyOf(slots, slot * 2);
 		}
-		else
+		slots[slot] = entityHandler == null ? null : instance;
+		entry = new Ref<>(this, slot);
+		if (snapshot != null && snapshot.contains(id))
 		{
-			entry = new ValueLoaderEntry<>(new ValueResolver<>(
-					entityHandler, instance, languageTags));
+			entry.set(snapshot.getValue(id, locale));
 		}
 		idMap.put(id, entry);
 		return entry;
 
 	}
 	
+	/*
+	 * With auto-loading, getting a pending reference loads every pending ID,
+	 * before falling back to the instance
+	 */
+	@SuppressWarnings("unchecked")
+	private void loadPending(Ref<V> ref)
+	{
+		if (autoLoadEntityManager != null)
+		{
+			load(autoLoadEntityManager);
+		}
+		if (!ref.isLoaded())
+		{
+			T instance = (T) slots[ref.slot];
+			if (instance == null)
+			{
+				throw new IllegalStateException("Not resolvable");
+			}
+			V value;
+			try
+			{
+				value = ValueResolver.resolve(
+						entityHandler, instance, candidates);
+			}
+			catch (EntityNotFoundException e)
+			{
+				value = null;
+			}
+			ref.set(value);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Resolver<V> createResolver(int slot)
+	{
+		if (slots[slot] == null)
+		{
+			return NonResolvable.instance();
+		}
+		return new ValueResolver<T, V>(
+				entityHandler, (T) slots[slot], locale);
+	}
+	
 	@Override
 	public void load(EntityManager em)
 	{
@@ -121,67 +260,342 @@ final class ValueLoaderImpl<T, V> implements ValueLoader<T, V>
 		{
 			throw new UnsupportedOperationException();
 		}
+		if (!vqb.isMatchable(languageTags))
+		{
+			for (Ref<V> entry: idMap.values())
+			{
+				if (!entry.isLoaded())
+				{
+					entry.set(null);
+				}
+			}
+			return;
+		}
+		if (cache == null)
+		{
+			if (mapLoader != null)
+			{
+				resolveFromMaps(em);
+			}
+			loadFromQueries(em, null, null, 0);
+			return;
+		}
+		
+		/*
+		 * Values fetched across an invalidation are not cached
+		 */
+		long invalidationCount = cache.getInvalidationCount();
+		loadFromCache();
+		if (mapLoader != null)
+		{
+			resolveFromMaps(em);
+		}
+		
+		/*
+		 * IDs already being fetched by other loaders are awaited after this 
+		 * loader's own queries, so that two loaders never wait on each other
+		 */
+		Map<Object, LocalizedCache.Flight> owned = new IdMap<>();
+		Map<Object, LocalizedCache.Flight> followed = new IdMap<>();
+		claimFlights(owned, followed, invalidationCount);
+		try
+		{
+			loadFromQueries(em, owned, followed.keySet(), invalidationCount);
+		}
+		finally
+		{
+			for (LocalizedCache.Flight flight: owned.values())
+			{
+				flight.abandon();
+			}
+		}
+		boolean abandoned = false;
+		for (Entry<Object, LocalizedCache.Flight> e: followed.entrySet())
+		{
+			Object masked = e.getValue().await();
+			if (masked == null)
+			{
+				abandoned = true;
+			}
+			else
+			{
+				idMap.get(e.getKey()).set(LocalizedCache.<V>unmask(masked));
+			}
+		}
+		if (abandoned)
+		{
+			loadFromQueries(em, null, null, invalidationCount);
+		}
+	}
+	
+	private void claimFlights(
+			Map<Object, LocalizedCache.Flight> owned,
+			Map<Object, LocalizedCache.Flight> followed,
+			long invalidationCount)
+	{
+		for (Entry<Object, Ref<V>> mapEntry: idMap.entrySet())
+		{
+			if (mapEntry.getValue().isLoaded())
+			{
+				continue;
+			}
+			LocalizedCache.Flight flight = cache.claimValue(
+					mapEntry.getKey(), locale, invalidationCount);
+			(flight.isOwner() ? owned : followed).put(
+					mapEntry.getKey(), flight);
+		}
+	}
+	
+	/*
+	 * owned flights are completed as their IDs are queried, and skipped IDs 
+	 * are left unloaded.  The other queried IDs are cached unless the cache 
+	 * was invalidated since invalidationCount was read
+	 */
+	private void loadFromQueries(
+			EntityManager em, 
+			Map<Object, LocalizedCache.Flight> owned,
+			Set<Object> skipped,
+			long invalidationCount)
+	{
 		int maxBatchSize = vqb.getMaxBatchSize();
-		Map<Object, ValueLoaderEntry<V>> batch = new HashMap<>();
+		Map<Object, Ref<V>> batch = new IdMap<>();
 		
-		Query maxBatchQuery = null;
-		for (Entry<Object, ValueLoaderEntry<V>> mapEntry: idMap.entrySet())
+		/*
+		 * With ADAPTIVE, batches of the same load may use different queries
+		 */
+		Map<ValueResolution, Query> maxBatchQueries = 
+				new EnumMap<>(ValueResolution.class);
+		for (Entry<Object, Ref<V>> mapEntry: idMap.entrySet())
 		{
-			ValueLoaderEntry<V> entry = mapEntry.getValue();
-			if (entry.isLoaded())
+			Ref<V> entry = mapEntry.getValue();
+			if (entry.isLoaded() 
+					|| (skipped != null && skipped.contains(mapEntry.getKey())))
 			{
 				continue;
 			}
 			batch.put(mapEntry.getKey(), entry);
 			if (batch.size() == maxBatchSize)
 			{
-				if (maxBatchQuery == null)
-				{
-					maxBatchQuery = createQuery(em, maxBatchSize);
-				}
-				flushBatch(maxBatchQuery, batch);
+				flushBatch(
+						em, maxBatchQueries, batch, owned, invalidationCount);
 			}
 		}
 		
 		if (!batch.isEmpty())
 		{
-			flushBatch(createQuery(em, batch.size()), batch);
+			flushBatch(em, maxBatchQueries, batch, owned, invalidationCount);
+		}
+	}
+	
+	private void loadFromCache()
+	{
+		for (Entry<Object, Ref<V>> mapEntry: idMap.entrySet())
+		{
+			Ref<V> entry = mapEntry.getValue();
+			if (entry.isLoaded())
+			{
+				continue;
+			}
+			Object cached = cache.getValue(mapEntry.getKey(), locale);
+			if (cached != null)
+			{
+				entry.set(LocalizedCache.<V>unmask(cached));
+			}
 		}
 	}
 	
-	private Query createQuery(EntityManager em, int idBatchSize)
+	private void resolveFromMaps(EntityManager em)
 	{
-		Query q = em.createQuery(vqb.copy()
-				.addIdParams(idBatchSize)
-				.createQueryText());
+		boolean mapLoadRequired = false;
+		for (Entry<Object, Ref<V>> mapEntry: idMap.entrySet())
+		{
+			if (mapEntry.getValue().isLoaded())
+			{
+				continue;
+			}
+			MapLoaderEntry<V> mapLoaderEntry = mapLoader.getEntry(
+					mapEntry.getKey());
+			if (mapLoaderEntry != null && !mapLoaderEntry.isLoaded())
+			{
+				mapLoadRequired = true;
+				break;
+			}
+		}
+		if (mapLoadRequired)
+		{
+			mapLoader.load(em);
+		}
 		
-		ValueQueryBuilder.setLanguageTagParams(q, languageTags);
+		for (Entry<Object, Ref<V>> mapEntry: idMap.entrySet())
+		{
+			Ref<V> entry = mapEntry.getValue();
+			if (entry.isLoaded())
+			{
+				continue;
+			}
+			MapLoaderEntry<V> mapLoaderEntry = mapLoader.getEntry(
+					mapEntry.getKey());
+			if (mapLoaderEntry != null && mapLoaderEntry.isLoaded())
+			{
+				entry.set(Utils.resolve(mapLoaderEntry, candidates));
+			}
+		}
+	}
+	
+	private Query createQuery(
+			EntityManager em, ValueQueryBuilder<V> qb, int idBatchSize)
+	{
+		Query q = em.createQuery(
+				qb.getQueryText(idBatchSize, languageTags.size()));
+		
+		qb.setLanguageTagParams(q, languageTags);
 		return q;
 	}
 	
-	@SuppressWarnings("unchecked")
 	private void flushBatch(
+			EntityManager em, 
+			Map<ValueResolution, Query> maxBatchQueries,
+			Map<Object, Ref<V>> batch,
+			Map<Object, LocalizedCache.Flight> owned,
+			long invalidationCount)
+	{
+		ValueQueryBuilder<V> qb = adaptiveResolution == null ? 
+				vqb : adaptiveResolution.getValueQueryBuilder();
+		int querySize = qb.getQueryBatchSize(batch.size());
+		final Query q;
+		if (querySize == qb.getMaxBatchSize())
+		{
+			Query maxBatchQuery = maxBatchQueries.get(
+					qb.getValueResolution());
+			if (maxBatchQuery == null)
+			{
+				maxBatchQuery = createQuery(em, qb, querySize);
+				maxBatchQueries.put(qb.getValueResolution(), maxBatchQuery);
+			}
+			q = maxBatchQuery;
+		}
+		else
+		{
+			q = createQuery(em, qb, querySize);
+		}
+		
+		Map<Object, Ref<V>> cacheBatch = 
+				cache == null ? null : new IdMap<>(batch);
+		if (adaptiveResolution == null)
+		{
+			flushBatch(qb, q, batch, querySize);
+		}
+		else
+		{
+			int idCount = batch.size();
+			long start = System.nanoTime();
+			int rowCount = flushBatch(qb, q, batch, querySize);
+			adaptiveResolution.record(
+					qb.getValueResolution(), 
+					idCount, 
+					rowCount, 
+					System.nanoTime() - start);
+		}
+		if (cacheBatch != null)
+		{
+			for (Entry<Object, Ref<V>> e: cacheBatch.entrySet())
+			{
+				LocalizedCache.Flight flight = 
+						owned == null ? null : owned.remove(e.getKey());
+				if (flight == null)
+				{
+					cache.putValue(
+							e.getKey(), 
+							locale, 
+							e.getValue().get(), 
+							invalidationCount);
+				}
+				else
+				{
+					flight.complete(e.getValue().get());
+				}
+			}
+		}
+	}
+	
+	/*
+	 * Returns the number of query result rows
+	 */
+	@SuppressWarnings("unchecked")
+	private int flushBatch(
+			ValueQueryBuilder<V> qb,
 			Query q, 
-			Map<Object, ValueLoaderEntry<V>> batch)
+			Map<Object, Ref<V>> batch,
+			int paramCount)
 	{
-		ValueQueryBuilder.setIdParams(q, batch.keySet());
-		for (Object[] row: (List<Object[]>) q.getResultList())
+		ValueQueryBuilder.setIdParams(q, batch.keySet(), paramCount);
+		List<Object[]> rows = q.getResultList();
+		if (qb.getValueResolution() == ValueResolution.IN_MEMORY)
 		{
-			
-			ValueLoaderEntry<V> vs = batch.remove(
-					ValueQueryBuilder.getLocalizableId(row));
-			if (vs == null)
+			resolveCandidates(qb, rows, batch);
+		}
+		else
+		{
+			for (Object[] row: rows)
 			{
-				continue;
+				Ref<V> vs = batch.remove(
+						ValueQueryBuilder.getLocalizableId(row));
+				if (vs == null)
+				{
+					continue;
+				}
+				vs.set(qb.getValue(row));
 			}
-			vs.set(vqb.getValue(row));
 		}
 		
-		for (ValueLoaderEntry<V> batchEntry: batch.values())
+		for (Ref<V> batchEntry: batch.values())
 		{
 			batchEntry.set(null);
 		}
 		
 		batch.clear();
+		return rows.size();
+	}
+	
+	/*
+	 * Same rule as ValueResolver.resolve: the row with the highest language 
+	 * level wins, and rows of the same level are ranked by the position of 
+	 * their language tag among the candidates.  Only the winning row of each 
+	 * ID is turned into a value
+	 */
+	private void resolveCandidates(
+			ValueQueryBuilder<V> qb,
+			List<Object[]> rows, 
+			Map<Object, Ref<V>> batch)
+	{
+		Map<Object, Object[]> matches = new IdMap<>();
+		for (Object[] row: rows)
+		{
+			Object id = ValueQueryBuilder.getLocalizableId(row);
+			if (!batch.containsKey(id))
+			{
+				continue;
+			}
+			Object[] match = matches.get(id);
+			if (match == null)
+			{
+				matches.put(id, row);
+				continue;
+			}
+			int languageLevel = ValueQueryBuilder.getLanguageLevel(row);
+			int matchLanguageLevel = ValueQueryBuilder.getLanguageLevel(match);
+			if (languageLevel > matchLanguageLevel
+					|| (languageLevel == matchLanguageLevel
+							&& candidates.getRank(qb.getLanguageTag(row)) 
+									< candidates.getRank(
+											qb.getLanguageTag(match))))
+			{
+				matches.put(id, row);
+			}
+		}
+		for (Entry<Object, Object[]> e: matches.entrySet())
+		{
+			batch.remove(e.getKey()).set(qb.getValue(e.getValue()));
+		}
 	}
 }
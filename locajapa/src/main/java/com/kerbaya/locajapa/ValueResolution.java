@@ -0,0 +1,60 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+/**
+ * The ways in which a query-loading {@link ValueLoader} can resolve the 
+ * best-matching localized value (the one with the highest language level 
+ * among the candidate language tags of the loader's locale)
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public enum ValueResolution
+{
+	/**
+	 * The database resolves the best-matching localized value with a 
+	 * correlated {@code MAX} subquery, so that at most one row is returned per
+	 * localizable entity
+	 */
+	SUBQUERY,
+	
+	/**
+	 * The database returns every localized row whose language tag is a 
+	 * candidate, and the loader keeps the one with the highest language level.
+	 * This avoids the correlated subquery at the cost of returning up to one 
+	 * row per candidate language tag for each localizable entity
+	 */
+	IN_MEMORY,
+	
+	/**
+	 * Value loaders use both {@link #SUBQUERY} and {@link #IN_MEMORY}, 
+	 * timing the batches loaded with each (after discarding the first few 
+	 * batches of each as warm-up), and settle on whichever takes less time 
+	 * per localizable entity.  The other strategy is re-sampled 
+	 * periodically, so the choice can change if the data or the database 
+	 * does.  The choice and the statistics behind it are shared by all value
+	 * loaders of a {@link LoaderFactory}
+	 * 
+	 * @see LoaderFactory#getValueResolution()
+	 * @see LoaderFactory#isValueResolutionSampling()
+	 * @see LoaderFactory#getValueResolutionStats()
+	 */
+	ADAPTIVE,
+	;
+}
@@ -0,0 +1,129 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+/**
+ * An immutable snapshot of the batches loaded with one 
+ * {@link ValueResolution} strategy by the value loaders of an adaptive
+ * {@link LoaderFactory}.  Older batches are progressively discounted, so the 
+ * counts reflect recent loading rather than all loading since the factory was
+ * created
+ * 
+ * @author Glenn.Lane@kerbaya.com
+ */
+public final class ValueResolutionStats
+{
+	private final ValueResolution valueResolution;
+	private final long batchCount;
+	private final long idCount;
+	private final long rowCount;
+	private final long elapsedNanos;
+	
+	ValueResolutionStats(
+			ValueResolution valueResolution, 
+			long batchCount, 
+			long idCount, 
+			long rowCount, 
+			long elapsedNanos)
+	{
+		this.valueResolution = valueResolution;
+		this.batchCount = batchCount;
+		this.idCount = idCount;
+		this.rowCount = rowCount;
+		this.elapsedNanos = elapsedNanos;
+	}
+
+	/**
+	 * @return
+	 * the strategy that these statistics describe
+	 */
+	public ValueResolution getValueResolution()
+	{
+		return valueResolution;
+	}
+
+	/**
+	 * @return
+	 * the number of timed batches (query executions), not counting the 
+	 * warm-up batches
+	 */
+	public long getBatchCount()
+	{
+		return batchCount;
+	}
+
+	/**
+	 * @return
+	 * the number of localizable entity IDs loaded
+	 */
+	public long getIdCount()
+	{
+		return idCount;
+	}
+
+	/**
+	 * @return
+	 * the number of query result rows returned
+	 */
+	public long getRowCount()
+	{
+		return rowCount;
+	}
+
+	/**
+	 * @return
+	 * the time spent executing queries and resolving their results, in 
+	 * nanoseconds
+	 */
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+	
+	/**
+	 * @return
+	 * the average number of query result rows returned per localizable 
+	 * entity ID, or zero if no IDs were loaded
+	 */
+	public double getRowsPerId()
+	{
+		return idCount == 0 ? 0 : (double) rowCount / idCount;
+	}
+	
+	/**
+	 * @return
+	 * the average time per localizable entity ID, in nanoseconds, or zero if
+	 * no IDs were loaded
+	 */
+	public double getNanosPerId()
+	{
+		return idCount == 0 ? 0 : (double) elapsedNanos / idCount;
+	}
+	
+	@Override
+	public String toString()
+	{
+		return valueResolution 
+				+ "[batches=" + batchCount 
+				+ ", ids=" + idCount 
+				+ ", rows=" + rowCount 
+				+ ", nanos=" + elapsedNanos 
+				+ "]";
+	}
+}
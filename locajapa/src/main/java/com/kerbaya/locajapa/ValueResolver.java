@@ -18,55 +18,91 @@
  */
 package com.kerbaya.locajapa;
 
-import java.util.Iterator;
-import java.util.Set;
+import java.util.Locale;
 
+/*
+ * The candidates are shared by the registry, and are not serializable: a 
+ * deserialized resolver looks them up again by its locale
+ */
 final class ValueResolver<T, V> implements Resolver<V>
 {
 	private static final long serialVersionUID = 401859217065373792L;
 
 	private final EntityHandler<? super T, ?, ? extends V> entityHandler;
 	private final T localizable;
-	private final Set<String> candidateLanguageTags;
+	private final Locale locale;
+	private final transient LocaleRegistry.Candidates candidates;
 	
 	public ValueResolver(
 			EntityHandler<? super T, ?, ? extends V> entityHandler,
 			T localizable, 
-			Set<String> candidateLanguageTags)
+			Locale locale)
 	{
 		this.entityHandler = entityHandler;
 		this.localizable = localizable;
-		this.candidateLanguageTags = candidateLanguageTags;
+		this.locale = locale;
+		candidates = LocaleRegistry.getCandidates(locale);
 	}
-
+	
+	/*
+	 * The localized instance with the highest language level wins.  Language
+	 * tags are tested against the candidates by their dictionary code, which
+	 * is integer work for known language tags.  Among localized instances of
+	 * the same language level, the one whose language tag comes first among
+	 * the candidates wins
+	 */
 	public static <T, V> V resolve(
 			EntityHandler<? super T, ?, ? extends V> entityHandler,
 			T localizable,
-			Set<String> candidateLanguageTags)
+			LocaleRegistry.Candidates candidates)
+	{
+		return resolveLocalized(entityHandler, localizable, candidates);
+	}
+	
+	private static <T, L, V> V resolveLocalized(
+			EntityHandler<? super T, L, ? extends V> entityHandler,
+			T localizable,
+			LocaleRegistry.Candidates candidates)
 	{
-		Iterator<Localized<V>> iter = LocalizedIterator.create(
-				entityHandler, localizable);
+		Iterable<? extends L> localizedInstances = 
+				entityHandler.getLocalized(localizable);
+		if (localizedInstances == null)
+		{
+			return null;
+		}
 		
 		int matchLanguageLevel = -1;
-		Localized<V> match = null;
-		while (iter.hasNext())
+		int matchRank = -1;
+		L match = null;
+		for (L next: localizedInstances)
 		{
-			Localized<V> next = iter.next();
-			int languageLevel = next.getLanguageLevel();
-			if ((match == null || languageLevel > matchLanguageLevel)
-					&& candidateLanguageTags.contains(
-							next.getLanguageTag()))
+			int rank = candidates.getRank(entityHandler.getLanguageTag(next));
+			if (rank < 0)
+			{
+				continue;
+			}
+			int languageLevel = entityHandler.getLanguageLevel(next);
+			if (match == null 
+					|| languageLevel > matchLanguageLevel
+					|| (languageLevel == matchLanguageLevel 
+							&& rank < matchRank))
 			{
 				match = next;
 				matchLanguageLevel = languageLevel;
+				matchRank = rank;
 			}
 		}
-		return match == null ? null : match.getValue();
+		return match == null ? null : entityHandler.getValue(match);
 	}
 	
 	@Override
 	public V get()
 	{
-		return resolve(entityHandler, localizable, candidateLanguageTags);
+		return resolve(entityHandler, localizable, candidates);
+	}
+	
+	protected Object readResolve()
+	{
+		return new ValueResolver<>(entityHandler, localizable, locale);
 	}
 }
\ No newline at end of file
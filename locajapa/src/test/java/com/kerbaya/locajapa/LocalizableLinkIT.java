@@ -18,22 +18,37 @@
  */
 package com.kerbaya.locajapa;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import javax.persistence.EntityManager;
+import javax.persistence.PersistenceException;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Maps;
 import com.kerbaya.locajapa.DBExecutor.JdbcRun;
 import com.kerbaya.locajapa.DBExecutor.JpaCall;
 
@@ -89,6 +104,84 @@ public class LocalizableLinkIT extends ITSupport
 						}
 					})
 					.build();
+	
+	private static final EntityHandler<LocalizableLink, LocalizedLink, Link> 
+			ENTITY_HANDLER = new EntityHandler<LocalizableLink, LocalizedLink, Link>(){
+				private static final long serialVersionUID =
+						-2268473601915384307L;
+
+				@Override
+				public Object getId(LocalizableLink localizable)
+				{
+					return localizable.getId();
+				}
+
+				@Override
+				public Iterable<? extends LocalizedLink> getLocalized(
+						LocalizableLink localizable)
+				{
+					return localizable.getLocalized();
+				}
+
+				@Override
+				public int getLanguageLevel(LocalizedLink localized)
+				{
+					return localized.getLanguageLevel();
+				}
+
+				@Override
+				public String getLanguageTag(LocalizedLink localized)
+				{
+					return localized.getLanguageTag();
+				}
+
+				@Override
+				public Link getValue(LocalizedLink localized)
+				{
+					return new Link(
+							localized.getHref(), localized.getText());
+				}
+			};
+	
+	/*
+	 * Configured as LOADER_FACTORY, for the factories of the other loading 
+	 * modes
+	 */
+	private static LoaderFactory.Builder<LocalizableLink, Link> builder()
+	{
+		return LoaderFactory.<LocalizableLink, Link>builder()
+				.setEntityName("LocalizableLink")
+				.setIdProperty("id")
+				.setLanguageLevelProperty("languageLevel")
+				.setLanguageTagProperty("languageTag")
+				.setLocalizedProperty("localized")
+				.setValueCtor(Link.class, "href", "text")
+				.setEntityHandler(ENTITY_HANDLER);
+	}
+	
+	private static final LoaderFactory<LocalizableLink, Link> 
+			PADDED_LOADER_FACTORY = builder().setBatchPadding(true).build();
+	
+	private static final LoaderFactory<LocalizableLink, Link> 
+			CONSTRUCTOR_EXPRESSION_LOADER_FACTORY = 
+					builder().setConstructorExpression(true).build();
+	
+	private static final LoaderFactory<LocalizableLink, Link> 
+			IN_MEMORY_LOADER_FACTORY = builder()
+					.setValueResolution(ValueResolution.IN_MEMORY)
+					.build();
+	
+	private static final LoaderFactory<LocalizableLink, Link> 
+			ADAPTIVE_LOADER_FACTORY = builder()
+					.setValueResolution(ValueResolution.ADAPTIVE)
+					.build();
+	
+	/*
+	 * Set to true (-Dlocajapa.benchmark=true) to run the benchmarks
+	 */
+	private static final String BENCHMARK_PROPERTY = "locajapa.benchmark";
+	private static final int BENCHMARK_WARMUP_ITERATIONS = 50;
+	private static final int BENCHMARK_ITERATIONS = 200;
 					
 	private static final Map<Long, Map<Locale, Link>> REFERENCE = ImmutableMap.<Long, Map<Locale, Link>>builder()
 			.put(1L, ImmutableMap.<Locale, Link>builder()
@@ -166,6 +259,7 @@ public class LocalizableLinkIT extends ITSupport
 								+ "languageLevel INT NOT NULL, "
 								+ "href CLOB NOT NULL, "
 								+ "text CLOB NOT NULL, "
+								+ "version INT NOT NULL, "
 								+ "PRIMARY KEY (id))");
 						stmt.executeUpdate(
 								"CREATE TABLE LocalizableLink_LocalizedLink ("
@@ -187,7 +281,7 @@ public class LocalizableLinkIT extends ITSupport
 					try (PreparedStatement parent = con.prepareStatement(
 									"INSERT INTO LocalizableLink (id) VALUES (?)");
 							PreparedStatement child = con.prepareStatement(
-									"INSERT INTO LocalizedLink (id, languageTag, languageLevel, href, text) VALUES (?, ?, ?, ?, ?)");
+									"INSERT INTO LocalizedLink (id, languageTag, languageLevel, href, text, version) VALUES (?, ?, ?, ?, ?, ?)");
 							PreparedStatement link = con.prepareStatement(
 									"INSERT INTO LocalizableLink_LocalizedLink (localizableLink_id, localized_id) VALUES (?, ?)"))
 					{
@@ -206,6 +300,7 @@ public class LocalizableLinkIT extends ITSupport
 								child.setInt(3, locSup.getLanguageLevel());
 								child.setString(4, e2.getValue().getHref());
 								child.setString(5, e2.getValue().getText());
+								child.setLong(6, localizedId);
 								child.executeUpdate();
 								link.setLong(1, e.getKey());
 								link.setLong(2, localizedId);
@@ -298,6 +393,13 @@ public class LocalizableLinkIT extends ITSupport
 	}
 	
 	private static Map<Long, Map<Locale, Link>> loadMap(final MapMethod lm)
+	{
+		return loadMap(LOADER_FACTORY, lm);
+	}
+	
+	private static Map<Long, Map<Locale, Link>> loadMap(
+			final LoaderFactory<LocalizableLink, Link> loaderFactory,
+			final MapMethod lm)
 	{
 		return EX.callJpa(new JpaCall<Map<Long, Map<Locale, Link>>>(){
 			@Override
@@ -306,7 +408,7 @@ public class LocalizableLinkIT extends ITSupport
 				ImmutableMap.Builder<Long, Map<Locale, Link>> b = 
 						ImmutableMap.builder(); 
 				MapLoader<LocalizableLink, Link> ll = 
-						LOADER_FACTORY.createMapLoader();
+						loaderFactory.createMapLoader();
 				for (Long id: REFERENCE.keySet())
 				{
 					final Map<Locale, Link> llEntry;
@@ -352,6 +454,14 @@ public class LocalizableLinkIT extends ITSupport
 	
 	private static Map<Long, Link> loadValues(
 			final Locale locale, final ValueMethod vm)
+	{
+		return loadValues(LOADER_FACTORY, locale, vm);
+	}
+	
+	private static Map<Long, Link> loadValues(
+			final LoaderFactory<LocalizableLink, Link> loaderFactory,
+			final Locale locale, 
+			final ValueMethod vm)
 	{
 		return EX.callJpa(new JpaCall<Map<Long, Link>>(){
 			@Override
@@ -360,7 +470,7 @@ public class LocalizableLinkIT extends ITSupport
 				final ImmutableMap.Builder<Long, Link> rb = 
 						ImmutableMap.builder();
 				ValueLoader<LocalizableLink, Link> ll = 
-						LOADER_FACTORY.createValueLoader(locale);
+						loaderFactory.createValueLoader(locale);
 				if (vm.immediate)
 				{
 					for (Long id: REFERENCE.keySet())
@@ -425,6 +535,85 @@ public class LocalizableLinkIT extends ITSupport
 		});
 	}
 	
+	private static void assertMapLoading(
+			LoaderFactory<LocalizableLink, Link> loaderFactory)
+	{
+		for (MapMethod lm: EnumSet.allOf(MapMethod.class))
+		{
+			Assert.assertEquals(REFERENCE, loadMap(loaderFactory, lm));
+		}
+	}
+	
+	private static void assertValueLoading(
+			LoaderFactory<LocalizableLink, Link> loaderFactory)
+	{
+		for (Entry<Locale, Map<Long, Link>> e: VALUE_REFERENCE.entrySet())
+		{
+			for (ValueMethod vm: EnumSet.allOf(ValueMethod.class))
+			{
+				Assert.assertEquals(
+						e.getValue(), 
+						loadValues(loaderFactory, e.getKey(), vm));
+			}
+		}
+	}
+	
+	/*
+	 * Not every provider accepts a constructor expression alongside other
+	 * select items
+	 */
+	private static void assumeConstructorExpression()
+	{
+		try
+		{
+			loadMap(CONSTRUCTOR_EXPRESSION_LOADER_FACTORY, MapMethod.ID_BATCH);
+			loadValues(
+					CONSTRUCTOR_EXPRESSION_LOADER_FACTORY, 
+					Locale.ROOT, 
+					ValueMethod.ID_BATCH);
+		}
+		catch (PersistenceException | IllegalArgumentException e)
+		{
+			if (!isConstructorExpressionRejected(e))
+			{
+				throw e;
+			}
+			Assume.assumeNoException(e);
+		}
+	}
+	
+	/*
+	 * Hibernate (before 6) only accepts a constructor expression as the whole
+	 * select clause, and reports its NEW keyword as an unexpected token.  Any
+	 * other failure, such as a parse error elsewhere in the query, is not an
+	 * unsupported provider
+	 */
+	private static boolean isConstructorExpressionRejected(Throwable t)
+	{
+		for (; t != null; t = t.getCause())
+		{
+			String message = t.getMessage();
+			if (message != null && message.toLowerCase(Locale.ROOT).contains(
+					"unexpected token: new"))
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static long timeLoading(
+			LoaderFactory<LocalizableLink, Link> loaderFactory, int iterations)
+	{
+		long start = System.nanoTime();
+		for (int i = 0; i < iterations; i++)
+		{
+			loadMap(loaderFactory, MapMethod.ID_BATCH);
+			loadValues(loaderFactory, Locale.CANADA, ValueMethod.ID_BATCH);
+		}
+		return System.nanoTime() - start;
+	}
+	
 	@Test
 	public void mapLoading()
 	{
@@ -446,4 +635,421 @@ public class LocalizableLinkIT extends ITSupport
 			}
 		}
 	}
+	
+	@Test
+	public void paddedLoading()
+	{
+		assertMapLoading(PADDED_LOADER_FACTORY);
+		assertValueLoading(PADDED_LOADER_FACTORY);
+	}
+	
+	@Test
+	public void inMemoryResolution()
+	{
+		assertValueLoading(IN_MEMORY_LOADER_FACTORY);
+	}
+	
+	@Test
+	public void adaptiveResolution()
+	{
+		Assert.assertTrue(ADAPTIVE_LOADER_FACTORY.isValueResolutionSampling());
+		Assert.assertEquals(
+				ValueResolution.SUBQUERY, 
+				ADAPTIVE_LOADER_FACTORY.getValueResolution());
+		assertValueLoading(ADAPTIVE_LOADER_FACTORY);
+		Assert.assertFalse(ADAPTIVE_LOADER_FACTORY.isValueResolutionSampling());
+		Assert.assertNotEquals(
+				ValueResolution.ADAPTIVE, 
+				ADAPTIVE_LOADER_FACTORY.getValueResolution());
+		List<ValueResolutionStats> stats = 
+				ADAPTIVE_LOADER_FACTORY.getValueResolutionStats();
+		Assert.assertEquals(2, stats.size());
+		for (ValueResolutionStats s: stats)
+		{
+			Assert.assertTrue(s.toString(), s.getBatchCount() > 0);
+			if (s.getValueResolution() == ValueResolution.SUBQUERY)
+			{
+				Assert.assertTrue(
+						s.toString(), s.getRowCount() <= s.getIdCount());
+			}
+		}
+	}
+	
+	@Test
+	public void multiLocaleLoading()
+	{
+		Map<Locale, Map<Long, Link>> values = EX.callJpa(
+				new JpaCall<Map<Locale, Map<Long, Link>>>() {
+			@Override
+			public Map<Locale, Map<Long, Link>> run(EntityManager em)
+			{
+				MultiLocaleValueLoader<LocalizableLink, Link> ll = 
+						LOADER_FACTORY.createMultiLocaleValueLoader(
+								VALUE_REFERENCE.keySet());
+				Map<Locale, Map<Long, ValueReference<Link>>> refs = 
+						new HashMap<>();
+				for (Locale locale: VALUE_REFERENCE.keySet())
+				{
+					Map<Long, ValueReference<Link>> localeRefs = 
+							new HashMap<>();
+					for (Long id: REFERENCE.keySet())
+					{
+						localeRefs.put(id, ll.getRefById(id, locale));
+					}
+					refs.put(locale, localeRefs);
+				}
+				int beforeLoad = getExCount();
+				ll.load(em);
+				Assert.assertEquals(beforeLoad + 1, getExCount());
+				ImmutableMap.Builder<Locale, Map<Long, Link>> rb = 
+						ImmutableMap.builder();
+				for (Entry<Locale, Map<Long, ValueReference<Link>>> e: 
+						refs.entrySet())
+				{
+					ImmutableMap.Builder<Long, Link> b = 
+							ImmutableMap.builder();
+					for (Entry<Long, ValueReference<Link>> e2: 
+							e.getValue().entrySet())
+					{
+						Link value = e2.getValue().get();
+						b.put(e2.getKey(), value == null ? NULL : value);
+					}
+					rb.put(e.getKey(), b.build());
+				}
+				return rb.build();
+			}
+		});
+		Assert.assertEquals(VALUE_REFERENCE, values);
+	}
+	
+	private static Map<Long, Link> autoLoadValues(final Locale locale)
+	{
+		return EX.callJpa(new JpaCall<Map<Long, Link>>(){
+			@Override
+			public Map<Long, Link> run(EntityManager em)
+			{
+				ValueLoader<LocalizableLink, Link> ll = 
+						LOADER_FACTORY.createValueLoader(locale, em);
+				List<Long> ids = new ArrayList<>(REFERENCE.keySet());
+				Map<Long, ValueReference<Link>> refs = new LinkedHashMap<>();
+				ImmutableMap.Builder<Long, Link> rb = ImmutableMap.builder();
+				for (List<Long> pending: ImmutableList.of(
+						ids.subList(0, ids.size() / 2), 
+						ids.subList(ids.size() / 2, ids.size())))
+				{
+					refs.clear();
+					for (Long id: pending)
+					{
+						refs.put(id, ll.getRefById(id));
+					}
+					int beforeLoad = getExCount();
+					for (Entry<Long, ValueReference<Link>> e: refs.entrySet())
+					{
+						Link value = e.getValue().get();
+						rb.put(e.getKey(), value == null ? NULL : value);
+					}
+					Assert.assertEquals(beforeLoad + 1, getExCount());
+				}
+				return rb.build();
+			}
+		});
+	}
+	
+	@Test
+	public void autoLoading()
+	{
+		for (Entry<Locale, Map<Long, Link>> e: VALUE_REFERENCE.entrySet())
+		{
+			Assert.assertEquals(e.getValue(), autoLoadValues(e.getKey()));
+		}
+	}
+	
+	@Test
+	public void preloadedLoading()
+	{
+		final LoaderFactory<LocalizableLink, Link> loaderFactory = 
+				builder().build();
+		EX.callJpa(new JpaCall<Void>() {
+			@Override
+			public Void run(EntityManager em)
+			{
+				int beforeLoad = getExCount();
+				loaderFactory.preload(em, VALUE_REFERENCE.keySet());
+				Assert.assertEquals(beforeLoad + 1, getExCount());
+				return null;
+			}
+		});
+		assertPreloaded(loaderFactory);
+	}
+	
+	private static final CatalogValueCodec<Link> LINK_CODEC = 
+			new CatalogValueCodec<Link>() {
+		@Override
+		public void write(Link value, DataOutput out) throws IOException
+		{
+			CatalogValueCodecs.STRING.write(value.getHref(), out);
+			CatalogValueCodecs.STRING.write(value.getText(), out);
+		}
+		
+		@Override
+		public Link read(DataInput in) throws IOException
+		{
+			return new Link(
+					CatalogValueCodecs.STRING.read(in), 
+					CatalogValueCodecs.STRING.read(in));
+		}
+	};
+	
+	@Test
+	public void savedPreloadLoading() throws IOException
+	{
+		final LoaderFactory<LocalizableLink, Link> loaderFactory = 
+				builder().build();
+		EX.callJpa(new JpaCall<Void>() {
+			@Override
+			public Void run(EntityManager em)
+			{
+				loaderFactory.preload(em, VALUE_REFERENCE.keySet());
+				return null;
+			}
+		});
+		Path file = Files.createTempFile("locajapa", ".catalog");
+		try
+		{
+			loaderFactory.savePreload(file, LINK_CODEC);
+			LoaderFactory<LocalizableLink, Link> opened = builder().build();
+			int beforeLoad = getExCount();
+			Assert.assertEquals(
+					REFERENCE.size(), opened.openPreload(file, LINK_CODEC));
+			Assert.assertEquals(beforeLoad, getExCount());
+			assertPreloaded(opened);
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+	
+	private static void assertPreloaded(
+			LoaderFactory<LocalizableLink, Link> loaderFactory)
+	{
+		int beforeLoad = getExCount();
+		ImmutableMap.Builder<Locale, Map<Long, Link>> rb = 
+				ImmutableMap.builder();
+		for (Locale locale: VALUE_REFERENCE.keySet())
+		{
+			ValueLoader<LocalizableLink, Link> vl = 
+					loaderFactory.createValueLoader(locale);
+			ImmutableMap.Builder<Long, Link> b = ImmutableMap.builder();
+			for (Long id: REFERENCE.keySet())
+			{
+				Link value = vl.getRefById(id).get();
+				b.put(id, value == null ? NULL : value);
+			}
+			rb.put(locale, b.build());
+		}
+		MapLoader<LocalizableLink, Link> ml = loaderFactory.createMapLoader();
+		for (Entry<Long, Map<Locale, Link>> e: REFERENCE.entrySet())
+		{
+			Assert.assertEquals(
+					e.getValue(), 
+					ImmutableMap.copyOf(ml.getMapById(e.getKey())));
+		}
+		Assert.assertEquals(beforeLoad, getExCount());
+		Assert.assertEquals(VALUE_REFERENCE, rb.build());
+	}
+	
+	private static void updateLink(
+			final long id, final Locale locale, final Link value)
+	{
+		try
+		{
+			EX.runJdbc(new JdbcRun() {
+				@Override
+				public void run(Connection con) throws SQLException
+				{
+					try (PreparedStatement stmt = con.prepareStatement(
+							"UPDATE LocalizedLink SET href = ?, text = ?, "
+							+ "version = (SELECT MAX(version) + 1 "
+									+ "FROM LocalizedLink) "
+							+ "WHERE languageTag = ? AND id IN ("
+									+ "SELECT localized_id "
+									+ "FROM LocalizableLink_LocalizedLink "
+									+ "WHERE LocalizableLink_id = ?)"))
+					{
+						stmt.setString(1, value.getHref());
+						stmt.setString(2, value.getText());
+						LocalizedSupport locSup = new LocalizedSupport(locale);
+						stmt.setString(3, locSup.getLanguageTag());
+						stmt.setLong(4, id);
+						Assert.assertEquals(1, stmt.executeUpdate());
+					}
+				}
+			});
+		}
+		catch (SQLException e)
+		{
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	@Test
+	public void refreshedLoading()
+	{
+		final LoaderFactory<LocalizableLink, Link> cachedFactory = builder()
+				.setCache(LocalizedCache.builder().build())
+				.setVersionProperty("version")
+				.build();
+		final LoaderFactory<LocalizableLink, Link> preloadedFactory = 
+				builder().setVersionProperty("version").build();
+		final Link original = REFERENCE.get(1L).get(Locale.ENGLISH);
+		final Link updated = new Link("href-1#en-updated", "text-1#en-updated");
+		EX.callJpa(new JpaCall<Void>() {
+			@Override
+			public Void run(EntityManager em)
+			{
+				Assert.assertEquals(0, cachedFactory.refresh(em));
+				MapLoader<LocalizableLink, Link> ml = 
+						cachedFactory.createMapLoader();
+				ml.getMapById(1L);
+				ml.load(em);
+				ValueLoader<LocalizableLink, Link> vl = 
+						cachedFactory.createValueLoader(Locale.ENGLISH);
+				vl.getRefById(1L);
+				vl.load(em);
+				preloadedFactory.preload(em, VALUE_REFERENCE.keySet());
+				return null;
+			}
+		});
+		updateLink(1L, Locale.ENGLISH, updated);
+		try
+		{
+			EX.callJpa(new JpaCall<Void>() {
+				@Override
+				public Void run(EntityManager em)
+				{
+					Assert.assertEquals(1, cachedFactory.refresh(em));
+					Assert.assertEquals(1, preloadedFactory.refresh(em));
+					
+					int beforeLoad = getExCount();
+					MapLoader<LocalizableLink, Link> ml = 
+							cachedFactory.createMapLoader();
+					Map<Locale, Link> map = ml.getMapById(1L);
+					ValueLoader<LocalizableLink, Link> vl = 
+							cachedFactory.createValueLoader(Locale.ENGLISH);
+					ValueReference<Link> ref = vl.getRefById(1L);
+					ml.load(em);
+					vl.load(em);
+					Assert.assertEquals(beforeLoad, getExCount());
+					Assert.assertEquals(updated, map.get(Locale.ENGLISH));
+					Assert.assertEquals(updated, ref.get());
+					
+					Assert.assertEquals(
+							updated, 
+							preloadedFactory.createValueLoader(Locale.ENGLISH)
+									.getRefById(1L).get());
+					Assert.assertEquals(
+							updated, 
+							preloadedFactory.createMapLoader()
+									.getMapById(1L).get(Locale.ENGLISH));
+					Assert.assertEquals(beforeLoad, getExCount());
+					return null;
+				}
+			});
+		}
+		finally
+		{
+			updateLink(1L, Locale.ENGLISH, original);
+		}
+	}
+	
+	private static Map<Long, Map<Locale, Link>> loadFilteredMap(
+			final Set<Locale> locales, final boolean includeFallbacks)
+	{
+		return EX.callJpa(new JpaCall<Map<Long, Map<Locale, Link>>>(){
+			@Override
+			public Map<Long, Map<Locale, Link>> run(EntityManager em)
+			{
+				MapLoader<LocalizableLink, Link> ll = 
+						LOADER_FACTORY.createMapLoader(
+								locales, includeFallbacks);
+				Map<Long, Map<Locale, Link>> maps = new HashMap<>();
+				for (Long id: REFERENCE.keySet())
+				{
+					maps.put(id, ll.getMapById(id));
+				}
+				int beforeLoad = getExCount();
+				ll.load(em);
+				Assert.assertEquals(beforeLoad + 1, getExCount());
+				ImmutableMap.Builder<Long, Map<Locale, Link>> rb = 
+						ImmutableMap.builder();
+				for (Entry<Long, Map<Locale, Link>> e: maps.entrySet())
+				{
+					rb.put(e.getKey(), ImmutableMap.copyOf(e.getValue()));
+				}
+				return rb.build();
+			}
+		});
+	}
+	
+	private static Map<Long, Map<Locale, Link>> filterReference(
+			Set<Locale> locales)
+	{
+		ImmutableMap.Builder<Long, Map<Locale, Link>> b = 
+				ImmutableMap.builder();
+		for (Entry<Long, Map<Locale, Link>> e: REFERENCE.entrySet())
+		{
+			b.put(e.getKey(), ImmutableMap.copyOf(
+					Maps.filterKeys(e.getValue(), Predicates.in(locales))));
+		}
+		return b.build();
+	}
+	
+	@Test
+	public void filteredMapLoading()
+	{
+		Set<Locale> locales = ImmutableSet.of(Locale.CANADA_FRENCH);
+		Assert.assertEquals(
+				filterReference(locales), 
+				loadFilteredMap(locales, false));
+		Assert.assertEquals(
+				filterReference(ImmutableSet.of(
+						Locale.CANADA_FRENCH, Locale.FRENCH, Locale.ROOT)), 
+				loadFilteredMap(locales, true));
+	}
+	
+	@Test
+	public void constructorExpressionLoading()
+	{
+		assumeConstructorExpression();
+		assertMapLoading(CONSTRUCTOR_EXPRESSION_LOADER_FACTORY);
+		assertValueLoading(CONSTRUCTOR_EXPRESSION_LOADER_FACTORY);
+	}
+	
+	/*
+	 * Compares selected columns (the value created from an Object[] row) with
+	 * a constructor expression (the value created by the provider).  Only run
+	 * with the benchmark property set; timings are reported, not asserted, 
+	 * since they depend on the provider and host
+	 */
+	@Test
+	public void constructorExpressionBenchmark()
+	{
+		Assume.assumeTrue(Boolean.getBoolean(BENCHMARK_PROPERTY));
+		assumeConstructorExpression();
+		timeLoading(LOADER_FACTORY, BENCHMARK_WARMUP_ITERATIONS);
+		timeLoading(
+				CONSTRUCTOR_EXPRESSION_LOADER_FACTORY, 
+				BENCHMARK_WARMUP_ITERATIONS);
+		long columns = timeLoading(LOADER_FACTORY, BENCHMARK_ITERATIONS);
+		long constructorExpression = timeLoading(
+				CONSTRUCTOR_EXPRESSION_LOADER_FACTORY, BENCHMARK_ITERATIONS);
+		System.out.printf(
+				"%s: columns=%dus, constructorExpression=%dus "
+						+ "(%d iterations)%n", 
+				LocalizableLinkIT.class.getSimpleName(),
+				columns / 1000, 
+				constructorExpression / 1000,
+				BENCHMARK_ITERATIONS);
+	}
 }
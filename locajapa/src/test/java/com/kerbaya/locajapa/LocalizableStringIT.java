@@ -377,4 +377,103 @@ public class LocalizableStringIT extends ITSupport
 			}
 		}
 	}
+	
+	private static Map<Long, String> loadMapsAndValues(final Locale locale)
+	{
+		return EX.callJpa(new JpaCall<Map<Long, String>>(){
+			@Override
+			public Map<Long, String> run(EntityManager em)
+			{
+				LocalizableLoader ll = new LocalizableLoader(locale);
+				ImmutableMap.Builder<Long, Map<Locale, String>> mb = 
+						ImmutableMap.builder(); 
+				ImmutableMap.Builder<Long, ValueReference<String>> vb = 
+						ImmutableMap.builder();
+				for (Long id: REFERENCE.keySet())
+				{
+					mb.put(id, ll.getMap(LocalizableString.class, id));
+					vb.put(id, ll.getRef(LocalizableString.class, id));
+				}
+				int beforeLoad = getExCount();
+				ll.load(em);
+				Assert.assertEquals(beforeLoad + 1, getExCount());
+				for (Entry<Long, Map<Locale, String>> e: 
+						mb.build().entrySet())
+				{
+					Assert.assertEquals(
+							REFERENCE.get(e.getKey()), 
+							ImmutableMap.copyOf(e.getValue()));
+				}
+				ImmutableMap.Builder<Long, String> rb = 
+						ImmutableMap.builder();
+				for (Entry<Long, ValueReference<String>> e: 
+						vb.build().entrySet())
+				{
+					String value = e.getValue().get();
+					rb.put(e.getKey(), value == null ? NULL : value);
+				}
+				return rb.build();
+			}
+		});
+	}
+	
+	/*
+	 * Values of entities that also have maps are resolved from the maps
+	 */
+	@Test
+	public void mapAndValueLoading()
+	{
+		for (Entry<Locale, Map<Long, String>> e: VALUE_REFERENCE.entrySet())
+		{
+			Assert.assertEquals(e.getValue(), loadMapsAndValues(e.getKey()));
+		}
+	}
+	
+	private static Map<Long, String> loadCachedValues(
+			final Locale locale, final LocalizedCache cache, final int queries)
+	{
+		return EX.callJpa(new JpaCall<Map<Long, String>>(){
+			@Override
+			public Map<Long, String> run(EntityManager em)
+			{
+				LocalizableLoader ll = new LocalizableLoader(
+						locale, QueryBuilder.DEFAULT_MAX_BATCH_SIZE, cache);
+				ImmutableMap.Builder<Long, ValueReference<String>> vb = 
+						ImmutableMap.builder();
+				for (Long id: REFERENCE.keySet())
+				{
+					vb.put(id, ll.getRef(LocalizableString.class, id));
+				}
+				int beforeLoad = getExCount();
+				ll.load(em);
+				Assert.assertEquals(beforeLoad + queries, getExCount());
+				ImmutableMap.Builder<Long, String> rb = 
+						ImmutableMap.builder();
+				for (Entry<Long, ValueReference<String>> e: 
+						vb.build().entrySet())
+				{
+					String value = e.getValue().get();
+					rb.put(e.getKey(), value == null ? NULL : value);
+				}
+				return rb.build();
+			}
+		});
+	}
+	
+	/*
+	 * A second entity manager is served from the cache without querying
+	 */
+	@Test
+	public void cachedLoading()
+	{
+		LocalizedCache cache = LocalizedCache.builder().build();
+		for (Entry<Locale, Map<Long, String>> e: VALUE_REFERENCE.entrySet())
+		{
+			Assert.assertEquals(
+					e.getValue(), loadCachedValues(e.getKey(), cache, 1));
+			Assert.assertEquals(
+					e.getValue(), loadCachedValues(e.getKey(), cache, 0));
+		}
+		Assert.assertTrue(cache.getHitCount() > 0);
+	}
 }
@@ -31,6 +31,7 @@ public class LocalizedLink
 	private String languageTag;
 	private String href;
 	private String text;
+	private long version;
 	
 	@Id
 	public long getId()
@@ -80,4 +81,13 @@ public class LocalizedLink
 	{
 		this.text = text;
 	}
+	
+	public long getVersion()
+	{
+		return version;
+	}
+	public void setVersion(long version)
+	{
+		this.version = version;
+	}
 }
@@ -20,21 +20,43 @@ package com.kerbaya.locajapa;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.Test;
 
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
 
 public class NonDbTest
 {
+	private static final LocalInvalidationBus BUS = new LocalInvalidationBus();
+	
 	private static final class NonEntity implements Localizable<String>
 	{
 		@Override
@@ -74,6 +96,1279 @@ public class NonDbTest
 		new LocalizableLoader().getRef(NonEntity.class, 1L);
 	}
 	
+	@Test
+	public void sharedLoaderFactory()
+	{
+		Assert.assertSame(
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, null), 
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, null));
+		Assert.assertNotSame(
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, null), 
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 20, null));
+		LocalizedCache cache = LocalizedCache.builder().build();
+		Assert.assertSame(
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, cache), 
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, cache));
+		Assert.assertNotSame(
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, null), 
+				LoaderFactoryRegistry.getLoaderFactory(
+						LocalizableString.class, 10, cache));
+	}
+	
+	@Test
+	public void cacheEviction()
+	{
+		LocalizedCache cache = LocalizedCache.builder().setMaxSize(1).build();
+		long invalidationCount = cache.getInvalidationCount();
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ROOT));
+		cache.put("Entity", "value", 1L, Locale.ROOT, null, invalidationCount);
+		Assert.assertNull(LocalizedCache.unmask(
+				cache.get("Entity", "value", 1L, Locale.ROOT)));
+		cache.put("Entity", "value", 1L, null, "map", invalidationCount);
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ROOT));
+		Assert.assertEquals("map", cache.get("Entity", "value", 1L, null));
+		Assert.assertEquals(1, cache.size());
+		Assert.assertEquals(2, cache.getHitCount());
+		Assert.assertEquals(2, cache.getMissCount());
+		Assert.assertEquals(1, cache.getEvictionCount());
+		cache.clear();
+		Assert.assertEquals(0, cache.size());
+	}
+	
+	private static final class StringValueFactory 
+			implements ValueFactory<String>
+	{
+		@Override
+		public String createValue(Object[] properties, int offset)
+		{
+			return (String) properties[offset];
+		}
+	}
+	
+	private static LoaderCache createLoaderCache(
+			LocalizedCache cache, 
+			String languageTagProperty, 
+			ValueFactory<String> valueFactory)
+	{
+		return QueryBuilder.<String>getInstance()
+				.setEntityName("Entity")
+				.setIdProperty("id")
+				.setLocalizedProperty("localized")
+				.setLanguageLevelProperty("languageLevel")
+				.setLanguageTagProperty(languageTagProperty)
+				.setValueFactory(valueFactory, ImmutableList.of("value"))
+				.setCache(cache)
+				.createLoaderCache();
+	}
+	
+	@Test
+	public void cacheRegions()
+	{
+		LocalizedCache cache = LocalizedCache.builder().build();
+		ValueFactory<String> valueFactory = new StringValueFactory();
+		LoaderCache loaderCache = 
+				createLoaderCache(cache, "languageTag", valueFactory);
+		loaderCache.putValue(
+				1L, Locale.ROOT, "value", cache.getInvalidationCount());
+		Assert.assertEquals("value", createLoaderCache(
+				cache, "languageTag", valueFactory).getValue(1L, Locale.ROOT));
+		Assert.assertNull(createLoaderCache(
+				cache, "otherTag", valueFactory).getValue(1L, Locale.ROOT));
+		Assert.assertNull(createLoaderCache(
+				cache, "languageTag", new StringValueFactory())
+						.getValue(1L, Locale.ROOT));
+	}
+	
+	@Test
+	public void offHeapCache()
+	{
+		LocalizedCache cache = 
+				LocalizedCache.builder().setOffHeapBudget(1000).build();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++)
+		{
+			sb.append('\u00e9');
+		}
+		String value = sb.toString();
+		long invalidationCount = cache.getInvalidationCount();
+		for (long id = 1; id <= 5; id++)
+		{
+			cache.put(
+					"Entity", 
+					"value", 
+					id, 
+					Locale.ROOT, 
+					value + id, 
+					invalidationCount);
+		}
+		Assert.assertEquals(
+				value + 5, cache.get("Entity", "value", 5L, Locale.ROOT));
+		
+		/*
+		 * The map does not fit in the only slab, which is recycled
+		 */
+		cache.put(
+				"Entity", 
+				"value", 
+				1L, 
+				null, 
+				Collections.singletonMap(Locale.ROOT, value), 
+				invalidationCount);
+		cache.put("Entity", "value", 2L, null, "short", invalidationCount);
+		Assert.assertEquals("short", cache.get("Entity", "value", 2L, null));
+		Assert.assertEquals(1000, cache.getOffHeapSize());
+		Assert.assertEquals(Collections.singletonMap(Locale.ROOT, value), 
+				cache.get("Entity", "value", 1L, null));
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ROOT));
+		Assert.assertEquals(1, cache.getEvictionCount());
+		Assert.assertEquals(6, cache.size());
+	}
+	
+	/*
+	 * Readers copy without locking the store: a handle whose slab is 
+	 * recycled while it is read decodes to null, never to other bytes
+	 */
+	@Test
+	public void offHeapStoreRecycling() throws InterruptedException
+	{
+		final OffHeapStore store = new OffHeapStore(1000, 1);
+		final AtomicReference<Object[]> published = new AtomicReference<>();
+		Thread writer = new Thread() {
+			@Override
+			public void run()
+			{
+				char[] chars = new char[100];
+				for (int i = 0; i < 100000; i++)
+				{
+					Arrays.fill(chars, (char) ('a' + i % 26));
+					String value = new String(chars);
+					published.set(new Object[] {store.encode(value), value});
+				}
+			}
+		};
+		writer.start();
+		while (writer.isAlive())
+		{
+			Object[] handleValue = published.get();
+			if (handleValue == null)
+			{
+				continue;
+			}
+			String decoded = store.decode(
+					(OffHeapStore.Handle) handleValue[0]);
+			if (decoded != null)
+			{
+				Assert.assertEquals(handleValue[1], decoded);
+			}
+		}
+		writer.join();
+		Assert.assertEquals(1000, store.getAllocatedBytes());
+	}
+	
+	@Test
+	public void idMap()
+	{
+		Map<Object, String> expected = new HashMap<>();
+		Map<Object, String> actual = new IdMap<>();
+		Random random = new Random(0);
+		for (int i = 0; i < 10000; i++)
+		{
+			Long key = (long) random.nextInt(500) - 250;
+			if (random.nextInt(3) == 0)
+			{
+				Assert.assertEquals(expected.remove(key), actual.remove(key));
+			}
+			else
+			{
+				Assert.assertEquals(
+						expected.put(key, "v" + i), actual.put(key, "v" + i));
+			}
+		}
+		Assert.assertEquals(expected, actual);
+		Assert.assertEquals(expected, new HashMap<>(actual));
+		Assert.assertNull(actual.get(1));
+		for (Iterator<Object> it = actual.keySet().iterator(); it.hasNext();)
+		{
+			if ((Long) it.next() % 2 == 0)
+			{
+				it.remove();
+			}
+		}
+		expected.keySet().retainAll(actual.keySet());
+		Assert.assertEquals(expected, actual);
+		
+		/*
+		 * A key of another type moves the entries to a hash map
+		 */
+		actual.put(1, "int");
+		expected.put(1, "int");
+		Assert.assertEquals(expected, actual);
+		actual.clear();
+		Assert.assertTrue(actual.isEmpty());
+	}
+	
+	@Test
+	public void localeArrayMap() throws IOException, ClassNotFoundException
+	{
+		LocaleArrayMap.Builder<String> builder = 
+				new LocaleArrayMap.Builder<>();
+		Map<Locale, String> expected = new HashMap<>();
+		for (String tag: new String[] {"und", "en", "fr", "en-CA", "fr-CA"})
+		{
+			builder.put(Locale.forLanguageTag(tag), tag);
+			expected.put(Locale.forLanguageTag(tag), tag);
+		}
+		builder.put(Locale.ENGLISH, "english");
+		expected.put(Locale.ENGLISH, "english");
+		Map<Locale, String> map = builder.build();
+		Assert.assertEquals(expected, map);
+		Assert.assertEquals(expected.hashCode(), map.hashCode());
+		Assert.assertEquals("fr-CA", map.get(new Locale("fr", "CA")));
+		Assert.assertNull(map.get(Locale.GERMAN));
+		Assert.assertEquals(map, serialize(map));
+		boolean thrown = false;
+		try
+		{
+			map.remove(Locale.ENGLISH);
+		}
+		catch (UnsupportedOperationException e)
+		{
+			thrown = true;
+		}
+		Assert.assertTrue(thrown);
+	}
+	
+	@Test
+	public void resolutionAllocation()
+	{
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		Assume.assumeTrue(
+				threadBean instanceof com.sun.management.ThreadMXBean);
+		com.sun.management.ThreadMXBean allocationBean = 
+				(com.sun.management.ThreadMXBean) threadBean;
+		Assume.assumeTrue(allocationBean.isThreadAllocatedMemorySupported()
+				&& allocationBean.isThreadAllocatedMemoryEnabled());
+		
+		String[] tags = {"und", "en", "fr", "de", "es", "en-CA", "fr-CA", "it"};
+		List<LocalizedString> localized = new ArrayList<>();
+		for (String tag: tags)
+		{
+			LocalizedString ls = new LocalizedString();
+			ls.setLocale(Locale.forLanguageTag(tag));
+			ls.setValue(tag + "-value");
+			localized.add(ls);
+		}
+		LocalizableString parent = new LocalizableString();
+		parent.setLocalized(localized);
+		LocaleRegistry.Candidates candidates = 
+				LocaleRegistry.getCandidates(Locale.CANADA_FRENCH);
+		int iterations = 100000;
+		for (int i = 0; i < iterations; i++)
+		{
+			ValueResolver.resolve(
+					LocalizableEntityHandler.INSTANCE, parent, candidates);
+		}
+		long threadId = Thread.currentThread().getId();
+		long before = allocationBean.getThreadAllocatedBytes(threadId);
+		for (int i = 0; i < iterations; i++)
+		{
+			Assert.assertEquals("fr-CA-value", ValueResolver.resolve(
+					LocalizableEntityHandler.INSTANCE, parent, candidates));
+		}
+		long allocated = 
+				allocationBean.getThreadAllocatedBytes(threadId) - before;
+		
+		/*
+		 * Less than one 16-byte object per localized instance: only the 
+		 * collection iterator may be allocated
+		 */
+		Assert.assertTrue("allocated " + allocated, 
+				allocated < (long) iterations * tags.length * 16);
+	}
+	
+	private static LocalizedString createLocalized(
+			String languageTag, int languageLevel)
+	{
+		LocalizedString ls = new LocalizedString();
+		ls.setLanguageTag(languageTag);
+		ls.setLanguageLevel(languageLevel);
+		ls.setValue(languageTag + "-value");
+		return ls;
+	}
+	
+	/*
+	 * The language level decides, whatever the position of the language tag
+	 * among the candidates, which only breaks ties
+	 */
+	@Test
+	public void resolutionByLanguageLevel() 
+			throws IOException, ClassNotFoundException
+	{
+		LocalizableString parent = new LocalizableString();
+		parent.setLocalized(ImmutableList.of(
+				createLocalized("en-CA", 1), 
+				createLocalized("en", 2), 
+				createLocalized("und", 2)));
+		Assert.assertEquals("en-value", ValueResolver.resolve(
+				LocalizableEntityHandler.INSTANCE, 
+				parent, 
+				LocaleRegistry.getCandidates(Locale.CANADA)));
+		
+		/*
+		 * nb and no have the same level: deferred resolvers keep the 
+		 * better-ranked one, also once deserialized
+		 */
+		LocalizableString norwegian = new LocalizableString();
+		norwegian.setLocalized(ImmutableList.of(
+				createLocalized("no", 2), createLocalized("nb", 2)));
+		ValueResolver<Localizable<?>, Object> resolver = new ValueResolver<>(
+				LocalizableEntityHandler.INSTANCE, 
+				norwegian, 
+				Locale.forLanguageTag("nb"));
+		Assert.assertEquals("nb-value", resolver.get());
+		Assert.assertEquals("nb-value", serialize(resolver).get());
+		
+		final List<Object[]> rows = ImmutableList.of(
+				new Object[] {1L, "und", 2, "und-value"},
+				new Object[] {1L, "en-CA", 1, "en-CA-value"},
+				new Object[] {1L, "en", 2, "en-value"});
+		QueryRecorder recorder = new QueryRecorder(
+				new QueryRecorder.ResultSource() {
+			@Override
+			public List<?> getResultList(QueryRecorder.RecordedQuery query)
+			{
+				return rows;
+			}
+		});
+		LoaderFactory<Object, String> factory = 
+				LoaderFactory.<Object, String>builder()
+						.setEntityName("Entity")
+						.setIdProperty("id")
+						.setLocalizedProperty("localized")
+						.setLanguageLevelProperty("languageLevel")
+						.setLanguageTagProperty("languageTag")
+						.setValueProperty("value")
+						.setValueResolution(ValueResolution.IN_MEMORY)
+						.build();
+		ValueLoader<Object, String> vl = 
+				factory.createValueLoader(Locale.CANADA);
+		ValueReference<String> ref = vl.getRefById(1L);
+		vl.load(recorder.getEntityManager());
+		Assert.assertEquals("en-value", ref.get());
+		MultiLocaleValueLoader<Object, String> mvl = 
+				factory.createMultiLocaleValueLoader(ImmutableSet.of(
+						Locale.CANADA, Locale.FRENCH));
+		ValueReference<String> caRef = mvl.getRefById(1L, Locale.CANADA);
+		ValueReference<String> frRef = mvl.getRefById(1L, Locale.FRENCH);
+		mvl.load(recorder.getEntityManager());
+		Assert.assertEquals("en-value", caRef.get());
+		Assert.assertEquals("und-value", frRef.get());
+	}
+	
+	/*
+	 * zh-Hant (level 3) is a better-ranked candidate of zh-TW than zh-TW 
+	 * itself (level 4), which wins by its level
+	 */
+	@Test
+	public void mapResolutionByLanguageLevel()
+	{
+		Locale zhTw = Locale.forLanguageTag("zh-TW");
+		Locale zhHant = Locale.forLanguageTag("zh-Hant");
+		Assert.assertEquals("zh-TW-value", Utils.resolve(
+				ImmutableMap.of(
+						zhHant, "zh-Hant-value", zhTw, "zh-TW-value"), 
+				LocaleRegistry.getCandidates(zhTw)));
+		
+		/*
+		 * nb and no have the same level: the better-ranked one wins
+		 */
+		Locale nb = Locale.forLanguageTag("nb");
+		Locale no = Locale.forLanguageTag("no");
+		Map<Locale, String> norwegian = ImmutableMap.of(
+				no, "no-value", nb, "nb-value");
+		Assert.assertEquals("nb-value", Utils.resolve(
+				norwegian, LocaleRegistry.getCandidates(nb)));
+		Assert.assertEquals("no-value", Utils.resolve(
+				norwegian, LocaleRegistry.getCandidates(no)));
+		
+		QueryRecorder recorder = recordRows(
+				new Object[] {1L, "zh-Hant", "zh-Hant-value"}, 
+				new Object[] {1L, "zh-TW", "zh-TW-value"});
+		LoaderFactory<Object, String> factory = createCatalogFactory("value");
+		MapLoader<Object, String> ml = factory.createMapLoader();
+		ml.getMapById(1L);
+		ValueLoader<Object, String> vl = factory.createValueLoader(zhTw, ml);
+		ValueReference<String> ref = vl.getRefById(1L);
+		vl.load(recorder.getEntityManager());
+		Assert.assertEquals(1, recorder.getQueries().size());
+		Assert.assertEquals("zh-TW-value", ref.get());
+		
+		/*
+		 * Patched cache entries and snapshots follow the same rule
+		 */
+		Map<Locale, String> changes = Collections.singletonMap(
+				zhTw, "zh-TW-value");
+		LocalizedCache cache = LocalizedCache.builder().build();
+		cache.put(
+				"Entity", 
+				"value", 
+				1L, 
+				null, 
+				Collections.singletonMap(zhHant, "zh-Hant-value"), 
+				cache.getInvalidationCount());
+		cache.put(
+				"Entity", 
+				"value", 
+				1L, 
+				zhTw, 
+				"zh-Hant-value", 
+				cache.getInvalidationCount());
+		cache.patch("Entity", "value", 1L, changes);
+		Assert.assertEquals(
+				"zh-TW-value", cache.get("Entity", "value", 1L, zhTw));
+		
+		Map<Object, Map<Locale, String>> rows = new HashMap<>();
+		rows.put(1L, Collections.singletonMap(zhHant, "zh-Hant-value"));
+		CatalogSnapshot<String> snapshot = new CatalogSnapshot.InMemory<>(
+				rows, Collections.singleton(zhTw), null);
+		Assert.assertEquals("zh-TW-value", snapshot.patch(
+				Collections.<Object, Map<Locale, String>>singletonMap(
+						1L, changes), 
+				null).getValue(1L, zhTw));
+	}
+	
+	/*
+	 * Refreshes overlay their changes on the snapshot until the overlay holds
+	 * enough IDs to be folded into a new in-memory snapshot
+	 */
+	@Test
+	public void snapshotCompaction()
+	{
+		Map<Object, Map<Locale, String>> rows = new HashMap<>();
+		for (long id = 0; id < 100; id++)
+		{
+			rows.put(id, Collections.singletonMap(Locale.ROOT, "root"));
+		}
+		CatalogSnapshot<String> snapshot = new CatalogSnapshot.InMemory<>(
+				rows, Collections.singleton(Locale.FRENCH), 0L);
+		for (long id = 0; id < 64; id++)
+		{
+			Assert.assertEquals(
+					id == 0, snapshot instanceof CatalogSnapshot.InMemory);
+			snapshot = snapshot.patch(
+					Collections.<Object, Map<Locale, String>>singletonMap(
+							id, Collections.singletonMap(Locale.FRENCH, "fr")), 
+					id + 1);
+		}
+		Assert.assertTrue(snapshot instanceof CatalogSnapshot.InMemory);
+		Assert.assertEquals(64L, snapshot.getWatermark());
+		Assert.assertEquals(100, snapshot.size());
+		Assert.assertEquals("fr", snapshot.getValue(63L, Locale.FRENCH));
+		Assert.assertEquals("root", snapshot.getValue(64L, Locale.FRENCH));
+		Assert.assertEquals("root", snapshot.getValue(63L, Locale.ENGLISH));
+	}
+	
+	@Test
+	public void localeRegistry()
+	{
+		Assert.assertSame(LocaleRegistry.getLocale("en-CA"), 
+				LocaleRegistry.getLocale(new String("en-CA")));
+		Assert.assertEquals(Locale.CANADA, LocaleRegistry.getLocale("en-CA"));
+		LocaleRegistry.Candidates candidates = 
+				LocaleRegistry.getCandidates(Locale.CANADA);
+		Assert.assertSame(candidates, 
+				LocaleRegistry.getCandidates(new Locale("en", "CA")));
+		Assert.assertEquals(2, candidates.getLanguageLevel());
+		Assert.assertEquals(ImmutableList.of("en-CA", "en", "und"), 
+				ImmutableList.copyOf(candidates.getLanguageTags()));
+		Assert.assertSame(LocaleRegistry.getLocale("en"), 
+				candidates.getLocales().get(1));
+		Assert.assertEquals(0, candidates.getRank("en-CA"));
+		Assert.assertEquals(2, candidates.getRank("und"));
+		Assert.assertEquals(-1, candidates.getRank("fr"));
+		Assert.assertEquals(-1, candidates.getRank("x-unknown"));
+		Assert.assertEquals(
+				LanguageTagDictionary.getCode("en"), 
+				LanguageTagDictionary.peekCode(new String("en")));
+	}
+	
+	@Test
+	public void languageCodes()
+	{
+		LanguageCodes codes = new LanguageCodes(ImmutableMap.of(
+				(short) 1, "en", (short) 2, "EN-ca", (short) 3, "und"));
+		Assert.assertEquals(ImmutableList.of((short) 2, (short) 3), 
+				codes.getCodes(ImmutableList.of("en-CA", "fr", "und")));
+		Assert.assertEquals("en-CA", codes.getLanguageTag(2));
+		Assert.assertEquals("en", codes.getLanguageTag(1L));
+		Assert.assertNull(codes.getLanguageTag(null));
+		Assert.assertNull(codes.getLanguageTag(4));
+		try
+		{
+			new LanguageCodes(ImmutableMap.of(1, "en", 2, "EN"));
+			Assert.fail();
+		}
+		catch (IllegalArgumentException e)
+		{
+		}
+	}
+	
+	/*
+	 * Answers watermark queries with 5, and any other query with rows
+	 */
+	private static QueryRecorder recordRows(final Object[]... rows)
+	{
+		return new QueryRecorder(new QueryRecorder.ResultSource() {
+			@Override
+			public List<?> getResultList(QueryRecorder.RecordedQuery query)
+			{
+				if (query.getQueryText().startsWith("SELECT MAX("))
+				{
+					return Collections.singletonList(5L);
+				}
+				return ImmutableList.copyOf(rows);
+			}
+		});
+	}
+	
+	@Test
+	public void languageCodeQueries()
+	{
+		LoaderFactory<Object, String> factory = 
+				LoaderFactory.<Object, String>builder()
+						.setEntityName("Entity")
+						.setIdProperty("id")
+						.setLocalizedProperty("localized")
+						.setLanguageLevelProperty("languageLevel")
+						.setLanguageCodeProperty(
+								"languageCode", 
+								ImmutableMap.of(
+										(short) 1, "en", 
+										(short) 2, "en-CA", 
+										(short) 3, "fr"))
+						.setValueProperty("value")
+						.setVersionProperty("version")
+						.build();
+		
+		QueryRecorder recorder = recordRows(new Object[] {1L, "en-value"});
+		ValueLoader<Object, String> vl = 
+				factory.createValueLoader(Locale.CANADA);
+		ValueReference<String> ref = vl.getRefById(1L);
+		vl.load(recorder.getEntityManager());
+		Assert.assertEquals("en-value", ref.get());
+		Assert.assertEquals(
+				ImmutableMap.of(
+						"id0", 1L, 
+						"lt0", (short) 2, 
+						"lt1", (short) 1, 
+						"lt2", (short) 1), 
+				recorder.getQueries().get(0).getParameters());
+		
+		/*
+		 * No candidate of German has a code: nothing is queried
+		 */
+		recorder = recordRows();
+		vl = factory.createValueLoader(Locale.GERMAN);
+		ref = vl.getRefById(1L);
+		vl.load(recorder.getEntityManager());
+		Assert.assertNull(ref.get());
+		MultiLocaleValueLoader<Object, String> mvl = 
+				factory.createMultiLocaleValueLoader(
+						Collections.singleton(Locale.GERMAN));
+		ref = mvl.getRefById(1L, Locale.GERMAN);
+		mvl.load(recorder.getEntityManager());
+		Assert.assertNull(ref.get());
+		MapLoader<Object, String> ml = factory.createMapLoader(
+				Collections.singleton(Locale.GERMAN), true);
+		Map<Locale, String> map = ml.getMapById(1L);
+		ml.load(recorder.getEntityManager());
+		Assert.assertEquals(Collections.emptyMap(), map);
+		Assert.assertEquals(0, recorder.getQueries().size());
+		
+		recorder = recordRows(new Object[] {1L, (short) 3, "fr-value"});
+		ml = factory.createMapLoader(
+				Collections.singleton(Locale.CANADA_FRENCH), true);
+		map = ml.getMapById(1L);
+		ml.load(recorder.getEntityManager());
+		Assert.assertEquals(
+				Collections.singletonMap(Locale.FRENCH, "fr-value"), map);
+		Assert.assertEquals(
+				ImmutableMap.of(
+						"id0", 1L, 
+						"lt0", (short) 3, 
+						"lt1", (short) 3, 
+						"lt2", (short) 3), 
+				recorder.getQueries().get(0).getParameters());
+		
+		/*
+		 * Rows whose code has no language tag are skipped
+		 */
+		recorder = recordRows(
+				new Object[] {1L, (short) 1, "en-value"}, 
+				new Object[] {1L, (short) 9, "unmapped-value"});
+		ml = factory.createMapLoader();
+		map = ml.getMapById(1L);
+		ml.load(recorder.getEntityManager());
+		Assert.assertEquals(
+				Collections.singletonMap(Locale.ENGLISH, "en-value"), map);
+		
+		recorder = recordRows(
+				new Object[] {1L, (short) 2, "en-CA-value"}, 
+				new Object[] {2L, 1, "en-value"}, 
+				new Object[] {2L, (short) 9, "unmapped-value"});
+		factory.preload(
+				recorder.getEntityManager(), 
+				Collections.singleton(Locale.CANADA));
+		Assert.assertEquals(
+				Collections.singletonMap(Locale.CANADA, "en-CA-value"), 
+				factory.createMapLoader().getMapById(1L));
+		Assert.assertEquals(
+				Collections.singletonMap(Locale.ENGLISH, "en-value"), 
+				factory.createMapLoader().getMapById(2L));
+		Assert.assertEquals("en-value", factory.createValueLoader(
+				Locale.CANADA).getRefById(2L).get());
+		
+		recorder = recordRows(
+				new Object[] {1L, 3L, 6L, "fr-value"}, 
+				new Object[] {2L, 9L, 7L, "unmapped-value"});
+		Assert.assertEquals(2, factory.refresh(recorder.getEntityManager()));
+		Assert.assertEquals(
+				Collections.singletonMap("watermark", 5L), 
+				recorder.getQueries().get(0).getParameters());
+		Assert.assertEquals(
+				Collections.singletonMap(Locale.ENGLISH, "en-value"), 
+				factory.createMapLoader().getMapById(2L));
+		recorder = recordRows();
+		factory.refresh(recorder.getEntityManager());
+		Assert.assertEquals(
+				Collections.singletonMap("watermark", 7L), 
+				recorder.getQueries().get(0).getParameters());
+		Assert.assertEquals(
+				ImmutableMap.of(
+						Locale.CANADA, "en-CA-value", 
+						Locale.FRENCH, "fr-value"), 
+				ImmutableMap.copyOf(factory.createMapLoader().getMapById(1L)));
+	}
+	
+	@Test
+	public void cacheFlight()
+	{
+		LocalizedCache cache = LocalizedCache.builder().build();
+		LocalizedCache.Flight owner = cache.claim(
+				"Entity", "value", 1L, Locale.ROOT);
+		LocalizedCache.Flight follower = cache.claim(
+				"Entity", "value", 1L, Locale.ROOT);
+		Assert.assertTrue(owner.isOwner());
+		Assert.assertFalse(follower.isOwner());
+		owner.complete("value");
+		Assert.assertEquals("value", follower.await());
+		Assert.assertEquals(1, cache.getMergedFetchCount());
+		Assert.assertEquals(
+				"value", cache.get("Entity", "value", 1L, Locale.ROOT));
+		owner = cache.claim("Entity", "value", 2L, Locale.ROOT);
+		follower = cache.claim("Entity", "value", 2L, Locale.ROOT);
+		owner.abandon();
+		Assert.assertNull(follower.await());
+		Assert.assertTrue(
+				cache.claim("Entity", "value", 2L, Locale.ROOT).isOwner());
+	}
+	
+	@Test
+	public void cacheInvalidation()
+	{
+		LocalizedCache cache = LocalizedCache.builder()
+				.setInvalidationBus(BUS)
+				.build();
+		long invalidationCount = cache.getInvalidationCount();
+		for (long id = 1; id <= 3; id++)
+		{
+			cache.put("Entity", "value", id, null, "map", invalidationCount);
+			cache.put(
+					"Entity", 
+					"value", 
+					id, 
+					Locale.ENGLISH, 
+					"en", 
+					invalidationCount);
+			cache.put(
+					"Entity", 
+					"value", 
+					id, 
+					Locale.CANADA, 
+					"en-CA", 
+					invalidationCount);
+			cache.put(
+					"Entity", 
+					"value", 
+					id, 
+					Locale.FRENCH, 
+					"fr", 
+					invalidationCount);
+			cache.put(
+					"Other", 
+					"value", 
+					id, 
+					Locale.ENGLISH, 
+					"en", 
+					invalidationCount);
+		}
+		LocalizedString en = new LocalizedString();
+		en.setLocale(Locale.ENGLISH);
+		BUS.publish(CacheInvalidation.forLocalized("Entity", 1L, en));
+		Assert.assertNull(cache.get("Entity", "value", 1L, null));
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ENGLISH));
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.CANADA));
+		Assert.assertEquals(
+				"fr", cache.get("Entity", "value", 1L, Locale.FRENCH));
+		BUS.publish(CacheInvalidation.forIds(
+				"Entity", ImmutableList.of(1L, 2L)));
+		Assert.assertNull(cache.get("Entity", "value", 2L, Locale.FRENCH));
+		Assert.assertEquals(
+				"map", cache.get("Entity", "value", 3L, null));
+		BUS.publish(CacheInvalidation.forEntity("Entity"));
+		Assert.assertEquals(3, cache.size());
+		BUS.unsubscribe(cache);
+		BUS.publish(CacheInvalidation.forEntity("Other"));
+		Assert.assertEquals(3, cache.size());
+		
+		LocalizedCache.Flight owner = cache.claim(
+				"Entity", "value", 1L, Locale.ROOT);
+		cache.invalidate(CacheInvalidation.forId("Entity", 1L));
+		owner.complete("stale");
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ROOT));
+		
+		invalidationCount = cache.getInvalidationCount();
+		cache.invalidate(CacheInvalidation.forId("Entity", 1L));
+		cache.put(
+				"Entity", "value", 1L, Locale.ROOT, "stale", invalidationCount);
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ROOT));
+		owner = cache.claim(
+				"Entity", "value", 1L, Locale.ROOT, invalidationCount);
+		owner.complete("stale");
+		Assert.assertNull(cache.get("Entity", "value", 1L, Locale.ROOT));
+		cache.put(
+				"Entity", 
+				"value", 
+				1L, 
+				Locale.ROOT, 
+				"fresh", 
+				cache.getInvalidationCount());
+		Assert.assertEquals(
+				"fresh", cache.get("Entity", "value", 1L, Locale.ROOT));
+	}
+	
+	/*
+	 * The localized rows of "Entity": ID, language tag, version, value.  Rows
+	 * are kept in version order
+	 */
+	private static final class CatalogTable 
+			implements QueryRecorder.ResultSource
+	{
+		private final List<Object[]> rows = new ArrayList<>();
+		private long version;
+		
+		public void put(long id, String languageTag, String value)
+		{
+			for (Iterator<Object[]> i = rows.iterator(); i.hasNext();)
+			{
+				Object[] row = i.next();
+				if (row[0].equals(id) && row[1].equals(languageTag))
+				{
+					i.remove();
+				}
+			}
+			rows.add(new Object[] {id, languageTag, ++version, value});
+		}
+		
+		@Override
+		public List<?> getResultList(QueryRecorder.RecordedQuery query)
+		{
+			if (query.getQueryText().startsWith("SELECT MAX("))
+			{
+				return Collections.singletonList(
+						rows.isEmpty() ? null : version);
+			}
+			Long watermark = (Long) query.getParameters().get("watermark");
+			List<Object[]> results = new ArrayList<>();
+			for (Object[] row: rows)
+			{
+				if (watermark == null)
+				{
+					results.add(new Object[] {row[0], row[1], row[3]});
+				}
+				else if ((Long) row[2] > watermark)
+				{
+					results.add(row);
+				}
+			}
+			return results;
+		}
+	}
+	
+	private static LoaderFactory<Object, String> createCatalogFactory(
+			String valueProperty)
+	{
+		return LoaderFactory.<Object, String>builder()
+				.setEntityName("Entity")
+				.setIdProperty("id")
+				.setLocalizedProperty("localized")
+				.setLanguageLevelProperty("languageLevel")
+				.setLanguageTagProperty("languageTag")
+				.setValueProperty(valueProperty)
+				.setVersionProperty("version")
+				.build();
+	}
+	
+	@Test
+	public void catalogFile() throws IOException
+	{
+		CatalogTable table = new CatalogTable();
+		table.put(1L, "en", "en-1");
+		table.put(1L, "fr", "fr-1");
+		table.put(2L, "en", "en-2");
+		LoaderFactory<Object, String> saved = createCatalogFactory("value");
+		Assert.assertEquals(2, saved.preload(
+				new QueryRecorder(table).getEntityManager(), 
+				Collections.singleton(Locale.ENGLISH)));
+		
+		Path dir = Files.createTempDirectory("locajapa");
+		Path file = dir.resolve("catalog");
+		try
+		{
+			saved.savePreload(file, CatalogValueCodecs.STRING);
+			saved.savePreload(file, CatalogValueCodecs.STRING);
+			List<Path> files = new ArrayList<>();
+			try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir))
+			{
+				for (Path p: ds)
+				{
+					files.add(p);
+				}
+			}
+			Assert.assertEquals(Collections.singletonList(file), files);
+			
+			LoaderFactory<Object, String> opened = 
+					createCatalogFactory("value");
+			Assert.assertEquals(
+					2, opened.openPreload(file, CatalogValueCodecs.STRING));
+			Assert.assertEquals("en-1", opened.createValueLoader(
+					Locale.CANADA).getRefById(1L).get());
+			Assert.assertEquals("fr-1", opened.createValueLoader(
+					Locale.FRENCH).getRefById(1L).get());
+			Assert.assertNull(opened.createValueLoader(
+					Locale.FRENCH).getRefById(2L).get());
+			Assert.assertEquals(
+					ImmutableMap.of(
+							Locale.ENGLISH, "en-1", Locale.FRENCH, "fr-1"), 
+					ImmutableMap.copyOf(
+							opened.createMapLoader().getMapById(1L)));
+			
+			/*
+			 * IDs missing from the snapshot are loaded by query
+			 */
+			MapLoader<Object, String> mapLoader = opened.createMapLoader();
+			Map<Locale, String> map = mapLoader.getMapById(3L);
+			QueryRecorder recorder = recordRows();
+			mapLoader.load(recorder.getEntityManager());
+			Assert.assertEquals(1, recorder.getQueries().size());
+			Assert.assertEquals(Collections.emptyMap(), map);
+			
+			/*
+			 * Refreshing continues from the watermark of the file
+			 */
+			table.put(2L, "en", "en-2b");
+			table.put(3L, "fr", "fr-3");
+			recorder = new QueryRecorder(table);
+			Assert.assertEquals(2, opened.refresh(recorder.getEntityManager()));
+			Assert.assertEquals(1, recorder.getQueries().size());
+			Assert.assertEquals(
+					Collections.singletonMap("watermark", 3L), 
+					recorder.getQueries().get(0).getParameters());
+			Assert.assertEquals("en-2b", opened.createValueLoader(
+					Locale.ENGLISH).getRefById(2L).get());
+			Assert.assertEquals("fr-3", opened.createValueLoader(
+					Locale.FRENCH).getRefById(3L).get());
+			
+			/*
+			 * Reopening the older file moves the refresher back
+			 */
+			opened.openPreload(file, CatalogValueCodecs.STRING);
+			recorder = new QueryRecorder(table);
+			Assert.assertEquals(2, opened.refresh(recorder.getEntityManager()));
+			Assert.assertEquals(
+					Collections.singletonMap("watermark", 3L), 
+					recorder.getQueries().get(0).getParameters());
+			Assert.assertEquals("en-2b", opened.createValueLoader(
+					Locale.ENGLISH).getRefById(2L).get());
+			
+			try
+			{
+				createCatalogFactory("otherValue").openPreload(
+						file, CatalogValueCodecs.STRING);
+				Assert.fail();
+			}
+			catch (IllegalArgumentException e)
+			{
+			}
+		}
+		finally
+		{
+			Files.deleteIfExists(file);
+			Files.delete(dir);
+		}
+	}
+	
+	private static <V> V codecRoundTrip(CatalogValueCodec<V> codec, V value) 
+			throws IOException
+	{
+		ByteArrayOutputStream baos = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(baos))
+		{
+			codec.write(value, out);
+			codec.write(value, out);
+		}
+		DataInputStream in = new DataInputStream(
+				new ByteArrayInputStream(baos.toByteArray()));
+		Assert.assertEquals(value, codec.read(in));
+		V read = codec.read(in);
+		Assert.assertEquals(-1, in.read());
+		return read;
+	}
+	
+	/*
+	 * Entities missing from a preloaded snapshot, such as those persisted
+	 * after it was read, resolve from their own localized collection
+	 */
+	@Test
+	public void preloadedEntityHandler()
+	{
+		LoaderFactory<Localizable<?>, Object> factory = 
+				LoaderFactory.<Localizable<?>, Object>builder()
+						.setEntityName("Entity")
+						.setIdProperty("id")
+						.setLocalizedProperty("localized")
+						.setLanguageLevelProperty("languageLevel")
+						.setLanguageTagProperty("languageTag")
+						.setValueProperty("value")
+						.setVersionProperty("version")
+						.setEntityHandler(LocalizableEntityHandler.INSTANCE)
+						.build();
+		factory.preload(
+				recordRows(new Object[] {1L, "en", "en-1"}).getEntityManager(), 
+				Collections.singleton(Locale.ENGLISH));
+		
+		LocalizableString preloaded = new LocalizableString();
+		preloaded.setId(1L);
+		preloaded.setLocalized(Collections.singleton(createLocalized("en", 1)));
+		LocalizableString persisted = new LocalizableString();
+		persisted.setId(2L);
+		persisted.setLocalized(Collections.singleton(createLocalized("en", 1)));
+		
+		ValueLoader<Localizable<?>, Object> loader = 
+				factory.createValueLoader(Locale.ENGLISH);
+		Assert.assertEquals("en-1", loader.getRef(preloaded).get());
+		Assert.assertEquals("en-value", loader.getRef(persisted).get());
+	}
+	
+	/*
+	 * IDs are found by a binary search of the index in the mapped file, 
+	 * including IDs of the same hash code ("Aa" and "BB")
+	 */
+	@Test
+	public void catalogFileIndex() throws IOException
+	{
+		Map<Object, Map<Locale, String>> rows = new HashMap<>();
+		for (long id = -500; id < 500; id++)
+		{
+			rows.put(id, Collections.singletonMap(Locale.ENGLISH, "en" + id));
+		}
+		rows.put("Aa", Collections.singletonMap(Locale.FRENCH, "fr-Aa"));
+		rows.put("BB", Collections.singletonMap(Locale.FRENCH, "fr-BB"));
+		Path file = Files.createTempFile("locajapa", ".catalog");
+		try
+		{
+			CatalogFile.write(
+					new CatalogSnapshot.InMemory<>(
+							rows, Collections.<Locale>emptySet(), 7L), 
+					file, 
+					"fingerprint", 
+					CatalogValueCodecs.STRING);
+			CatalogSnapshot<String> opened = CatalogFile.open(
+					file, "fingerprint", CatalogValueCodecs.STRING);
+			Assert.assertEquals(7L, opened.getWatermark());
+			Assert.assertEquals(rows.size(), opened.size());
+			Assert.assertEquals(rows.keySet(), opened.getIds());
+			for (Map.Entry<Object, Map<Locale, String>> e: rows.entrySet())
+			{
+				Assert.assertTrue(opened.contains(e.getKey()));
+				Assert.assertEquals(
+						e.getValue(), 
+						ImmutableMap.copyOf(opened.getMap(e.getKey())));
+			}
+			Assert.assertFalse(opened.contains(500L));
+			Assert.assertFalse(opened.contains("C#"));
+			Assert.assertEquals(
+					Collections.emptyMap(), opened.getMap(-501L));
+		}
+		finally
+		{
+			Files.delete(file);
+		}
+	}
+	
+	@Test
+	public void catalogValueCodecs() throws IOException
+	{
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 70000; i++)
+		{
+			sb.append('\u00e9');
+		}
+		for (String s: ImmutableList.of("", "value", sb.toString()))
+		{
+			Assert.assertEquals(
+					s, codecRoundTrip(CatalogValueCodecs.STRING, s));
+		}
+		Assert.assertEquals(Locale.CANADA_FRENCH, codecRoundTrip(
+				CatalogValueCodecs.<Locale>serializable(), 
+				Locale.CANADA_FRENCH));
+	}
+	
+	/*
+	 * Answers value queries with "value-<ID>" for even IDs
+	 */
+	private static final QueryRecorder.ResultSource EVEN_VALUES = 
+			new QueryRecorder.ResultSource() {
+		@Override
+		public List<?> getResultList(QueryRecorder.RecordedQuery query)
+		{
+			List<Object[]> rows = new ArrayList<>();
+			for (Map.Entry<String, Object> e: 
+					query.getParameters().entrySet())
+			{
+				if (e.getKey().startsWith("id") 
+						&& (Long) e.getValue() % 2 == 0)
+				{
+					rows.add(new Object[] {
+							e.getValue(), "value-" + e.getValue()});
+				}
+			}
+			return rows;
+		}
+	};
+	
+	@Test
+	public void valueLoaderSlots() throws IOException, ClassNotFoundException
+	{
+		ValueLoader<Object, String> vl = createCatalogFactory("value")
+				.createValueLoader(Locale.ENGLISH);
+		List<ValueReference<String>> refs = new ArrayList<>();
+		for (long id = 1; id <= 20; id++)
+		{
+			refs.add(vl.getRefById(id));
+		}
+		Assert.assertSame(refs.get(0), vl.getRefById(1L));
+		ValueReference<String> pending = serialize(refs.get(1));
+		try
+		{
+			pending.get();
+			Assert.fail();
+		}
+		catch (IllegalStateException e)
+		{
+		}
+		
+		QueryRecorder recorder = new QueryRecorder(EVEN_VALUES);
+		vl.load(recorder.getEntityManager());
+		
+		/*
+		 * IDs registered after a load get new slots, and only they are 
+		 * queried by the next one
+		 */
+		for (long id = 21; id <= 40; id++)
+		{
+			refs.add(vl.getRefById(id));
+		}
+		vl.load(recorder.getEntityManager());
+		Assert.assertEquals(2, recorder.getQueries().size());
+		Assert.assertEquals(
+				Long.valueOf(21), 
+				recorder.getQueries().get(1).getParameters().get("id0"));
+		Assert.assertFalse(recorder.getQueries().get(1).getParameters()
+				.containsKey("id20"));
+		for (int i = 0; i < refs.size(); i++)
+		{
+			long id = i + 1;
+			String expected = id % 2 == 0 ? "value-" + id : null;
+			Assert.assertEquals(expected, refs.get(i).get());
+			Assert.assertEquals(expected, serialize(refs.get(i)).get());
+		}
+	}
+	
+	@Test
+	public void adaptiveResolutionWarmup()
+	{
+		AdaptiveResolution<String> ar = new AdaptiveResolution<>(null, null);
+		Assert.assertTrue(ar.isSampling());
+		Assert.assertEquals(ValueResolution.SUBQUERY, ar.getValueResolution());
+		for (int i = 0; i < 6; i++)
+		{
+			ar.record(ValueResolution.SUBQUERY, 10, 10, 1000L);
+		}
+		Assert.assertTrue(ar.isSampling());
+		Assert.assertEquals(
+				ValueResolution.IN_MEMORY, ar.getValueResolution());
+		
+		/*
+		 * The slow first batches of IN_MEMORY are discarded as warm-up
+		 */
+		for (int i = 0; i < 2; i++)
+		{
+			ar.record(ValueResolution.IN_MEMORY, 10, 20, 1000000L);
+		}
+		for (int i = 0; i < 4; i++)
+		{
+			ar.record(ValueResolution.IN_MEMORY, 10, 20, 500L);
+		}
+		Assert.assertFalse(ar.isSampling());
+		Assert.assertEquals(
+				ValueResolution.IN_MEMORY, ar.getValueResolution());
+		for (ValueResolutionStats s: ar.getStats())
+		{
+			Assert.assertEquals(s.toString(), 4, s.getBatchCount());
+		}
+	}
+	
+	@Test
+	public void queryShapeReuse()
+	{
+		LoaderFactory<Object, String> factory = 
+				LoaderFactory.<Object, String>builder()
+						.setEntityName("Entity")
+						.setIdProperty("id")
+						.setLocalizedProperty("localized")
+						.setLanguageLevelProperty("languageLevel")
+						.setLanguageTagProperty("languageTag")
+						.setValueProperty("value")
+						.setMaxBatchSize(16)
+						.setBatchPadding(true)
+						.build();
+		Set<String> queryTexts = new HashSet<>();
+		int shapeCount = 0;
+		for (int pass = 0; pass < 2; pass++)
+		{
+			for (int idCount = 1; idCount <= 16; idCount++)
+			{
+				ValueLoader<Object, String> vl = 
+						factory.createValueLoader(Locale.ENGLISH);
+				for (long id = 1; id <= idCount; id++)
+				{
+					vl.getRefById(id);
+				}
+				QueryRecorder recorder = recordRows();
+				vl.load(recorder.getEntityManager());
+				Assert.assertEquals(1, recorder.getQueries().size());
+				boolean added = queryTexts.add(
+						recorder.getQueries().get(0).getQueryText());
+				
+				/*
+				 * The second pass only reuses query texts
+				 */
+				Assert.assertFalse(pass == 1 && added);
+			}
+			if (pass == 0)
+			{
+				shapeCount = factory.getQueryShapeCount();
+			}
+		}
+		
+		/*
+		 * Padded to 1, 2, 4, 8 and 16 IDs
+		 */
+		Assert.assertEquals(5, queryTexts.size());
+		Assert.assertEquals(5, shapeCount);
+		Assert.assertEquals(shapeCount, factory.getQueryShapeCount());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void invalidBatchSize()
+	{
+		new LocalizableLoader(Locale.ROOT, 0);
+	}
+	
+	@Test
+	public void constructorValueFactory() throws NoSuchMethodException
+	{
+		ValueFactory<Link> vf = new ConstructorValueFactory<>(
+				Link.class.getConstructor(String.class, String.class));
+		Assert.assertEquals(
+				new Link("href", "text"), 
+				vf.createValue(new Object[] {1L, "href", "text"}, 1));
+	}
+	
+	@Test
+	public void valueFactoryLoading()
+	{
+		LoaderFactory<Object, Link> factory = 
+				LoaderFactory.<Object, Link>builder()
+						.setEntityName("Entity")
+						.setIdProperty("id")
+						.setLocalizedProperty("localized")
+						.setLanguageLevelProperty("languageLevel")
+						.setLanguageTagProperty("languageTag")
+						.setValueFactory(
+								new ValueFactory<Link>() {
+									@Override
+									public Link createValue(
+											Object[] properties, int offset)
+									{
+										return new Link(
+												(String) properties[offset], 
+												(String) properties[
+														offset + 1]);
+									}
+								}, 
+								"href", 
+								"text")
+						.build();
+		QueryRecorder recorder = recordRows(
+				new Object[] {1L, "href", "text"});
+		ValueLoader<Object, Link> vl = 
+				factory.createValueLoader(Locale.ENGLISH);
+		ValueReference<Link> ref = vl.getRefById(1L);
+		vl.load(recorder.getEntityManager());
+		Assert.assertEquals(new Link("href", "text"), ref.get());
+		Assert.assertEquals(1, recorder.getQueries().size());
+		String queryText = recorder.getQueries().get(0).getQueryText();
+		Assert.assertTrue(queryText, queryText.contains(".href"));
+		Assert.assertTrue(queryText, queryText.contains(".text"));
+	}
+	
+	@Test(expected=IllegalStateException.class)
+	public void nestedConstructorExpression() throws NoSuchMethodException
+	{
+		LoaderFactory.<Object, Object>builder()
+				.setEntityName("Entity")
+				.setIdProperty("id")
+				.setLocalizedProperty("localized")
+				.setLanguageLevelProperty("languageLevel")
+				.setLanguageTagProperty("languageTag")
+				.setValueCtor(
+						AbstractMap.SimpleImmutableEntry.class.getConstructor(
+								Object.class, Object.class), 
+						"key", 
+						"value")
+				.setConstructorExpression(true)
+				.build();
+	}
+	
 	private static final Map<Locale, String> REFERENCE = ImmutableMap.<Locale, String>builder()
 			.put(Locale.ROOT, "und-value")
 			.put(Locale.ENGLISH, "en-value")
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2019 Kerbaya Software
+ * 
+ * This file is part of locajapa. 
+ * 
+ * locajapa is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * locajapa is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with locajapa.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package com.kerbaya.locajapa;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+/*
+ * An EntityManager stub that only creates queries: each executed query is
+ * recorded with its parameters, and answered by a ResultSource
+ */
+public class QueryRecorder
+{
+	public interface ResultSource
+	{
+		List<?> getResultList(RecordedQuery query);
+	}
+	
+	public static final class RecordedQuery
+	{
+		private final String queryText;
+		private final Map<String, Object> parameters = new LinkedHashMap<>();
+		
+		private RecordedQuery(String queryText)
+		{
+			this.queryText = queryText;
+		}
+		
+		public String getQueryText()
+		{
+			return queryText;
+		}
+		
+		public Map<String, Object> getParameters()
+		{
+			return Collections.unmodifiableMap(parameters);
+		}
+	}
+	
+	private final ResultSource resultSource;
+	private final List<RecordedQuery> queries = new ArrayList<>();
+	
+	public QueryRecorder(ResultSource resultSource)
+	{
+		this.resultSource = resultSource;
+	}
+	
+	private Query createQuery(String queryText)
+	{
+		final RecordedQuery recorded = new RecordedQuery(queryText);
+		return (Query) Proxy.newProxyInstance(
+				Query.class.getClassLoader(),
+				new Class<?>[] {Query.class},
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							Object proxy, Method method, Object[] args)
+					{
+						switch (method.getName())
+						{
+						case "setParameter":
+							recorded.parameters.put((String) args[0], args[1]);
+							return proxy;
+						case "getResultList":
+							queries.add(recorded);
+							return resultSource.getResultList(recorded);
+						case "getSingleResult":
+							queries.add(recorded);
+							List<?> results =
+									resultSource.getResultList(recorded);
+							return results.isEmpty() ? null : results.get(0);
+						default:
+							throw new UnsupportedOperationException(
+									method.getName());
+						}
+					}
+				});
+	}
+	
+	public EntityManager getEntityManager()
+	{
+		return (EntityManager) Proxy.newProxyInstance(
+				EntityManager.class.getClassLoader(),
+				new Class<?>[] {EntityManager.class},
+				new InvocationHandler() {
+					@Override
+					public Object invoke(
+							Object proxy, Method method, Object[] args)
+					{
+						if (method.getName().equals("createQuery"))
+						{
+							return createQuery((String) args[0]);
+						}
+						throw new UnsupportedOperationException(
+								method.getName());
+					}
+				});
+	}
+	
+	/*
+	 * The executed queries, in order
+	 */
+	public List<RecordedQuery> getQueries()
+	{
+		return Collections.unmodifiableList(queries);
+	}
+}